@@ -0,0 +1,86 @@
+package io.zensend;
+
+import java.util.HashMap;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end throughput and latency of the blocking client against an
+ * in-process stub server. The nested subclasses run the same benchmarks at
+ * different numbers of concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class ClientBenchmark {
+    private StubServer server;
+    private Client client;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = new StubServer();
+
+        ClientConfig config = new ClientConfig();
+        config.url = this.server.url();
+        config.verifyUrl = this.server.url();
+        config.maxTotalConnections = 256;
+        config.apiMaxConnections = 256;
+        this.client = new Client("API-KEY", config);
+
+        this.message = new Message();
+        this.message.body = "Your verification code is 123456";
+        this.message.originator = "ZenSend";
+        this.message.numbers = new String[]{"447777777777", "448888888888"};
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        this.client.close();
+        this.server.stop();
+    }
+
+    @Benchmark
+    public SmsResult sendSms() throws Exception {
+        return this.client.sendSms(this.message);
+    }
+
+    @Benchmark
+    public OperatorLookupResult lookupOperator() throws Exception {
+        return this.client.lookupOperator("447777777777");
+    }
+
+    @Benchmark
+    public HashMap<String, BigDecimal> getPrices() throws Exception {
+        return this.client.getPrices();
+    }
+
+    @Threads(1)
+    public static class OneThread extends ClientBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends ClientBenchmark {
+    }
+
+    @Threads(64)
+    public static class SixtyFourThreads extends ClientBenchmark {
+    }
+}
@@ -0,0 +1,101 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Consts;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.fluent.Form;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of each stage of building a sendsms request body.
+ *
+ * joinNumbers, buildForm and encodeForm are the stages of the Form and
+ * UrlEncodedFormEntity encoding that sendSmsRequest's FormEntity replaces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuildingBenchmark {
+    @Param({"1", "100", "10000"})
+    public int numbers;
+
+    private Message message;
+    private String joinedNumbers;
+    private List<NameValuePair> form;
+
+    @Setup
+    public void setup() {
+        this.message = new Message();
+        this.message.body = "Your verification code is 123456. It expires in 10 minutes.";
+        this.message.originator = "ZenSend";
+        this.message.numbers = new String[this.numbers];
+        for (int i = 0; i < this.numbers; i++) {
+            this.message.numbers[i] = Long.toString(447700000000L + i);
+        }
+        this.joinedNumbers = joinNumbers();
+        this.form = buildForm();
+    }
+
+    @Benchmark
+    public String joinNumbers() {
+        return StringUtils.join(this.message.numbers, ",");
+    }
+
+    @Benchmark
+    public List<NameValuePair> buildForm() {
+        return Form.form()
+            .add("BODY", this.message.body)
+            .add("NUMBERS", this.joinedNumbers)
+            .add("ORIGINATOR", this.message.originator)
+            .build();
+    }
+
+    @Benchmark
+    public void encodeForm(Blackhole blackhole) throws IOException {
+        new UrlEncodedFormEntity(this.form, Consts.UTF_8).writeTo(new BlackholeOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public void sendSmsRequest(Blackhole blackhole) throws IOException {
+        Transport.Request request = Protocol.sendSmsRequest(Protocol.ZENSEND_URL, this.message);
+        request.writeBody(new BlackholeOutputStream(blackhole));
+    }
+
+    static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            this.blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.blackhole.consume(b);
+        }
+    }
+}
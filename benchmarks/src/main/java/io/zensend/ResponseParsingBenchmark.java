@@ -0,0 +1,63 @@
+package io.zensend;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cost of turning a response into a result object, including the original
+ * approach of building an ObjectMapper per response for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] smsResult = StubServer.SMS_RESULT.getBytes(UTF_8);
+    private final byte[] operatorLookupResult = StubServer.OPERATOR_LOOKUP_RESULT.getBytes(UTF_8);
+    private final byte[] pricesResult = StubServer.PRICES_RESULT.getBytes(UTF_8);
+
+    @Benchmark
+    public Protocol.Result<SmsResult> newObjectMapperPerResponse() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.readValue(new InputStreamReader(new ByteArrayInputStream(this.smsResult), UTF_8),
+            new TypeReference<Protocol.Result<SmsResult>>(){});
+    }
+
+    @Benchmark
+    public SmsResult parseSmsResult() throws Exception {
+        return Protocol.parseResponse(response(this.smsResult), Protocol.SMS_RESULT_READER);
+    }
+
+    @Benchmark
+    public OperatorLookupResult parseOperatorLookupResult() throws Exception {
+        return Protocol.parseResponse(response(this.operatorLookupResult), Protocol.OPERATOR_LOOKUP_RESULT_READER);
+    }
+
+    @Benchmark
+    public Protocol.Prices parsePrices() throws Exception {
+        return Protocol.parseResponse(response(this.pricesResult), Protocol.PRICES_READER);
+    }
+
+    private static Transport.Response response(byte[] body) {
+        return InMemoryTransport.response(200, body);
+    }
+}
@@ -0,0 +1,78 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server returning canned successful responses for each
+ * endpoint, so the benchmarks measure the client rather than the network.
+ */
+class StubServer {
+    static final String SMS_RESULT = "{\"success\":{\"txguid\":\"eb224587-840e-456c-9e36-7e8af1fe0d56\",\"numbers\":2,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":0.04,\"new_balance_in_pence\":3985.8}}";
+    static final String OPERATOR_LOOKUP_RESULT = "{\"success\":{\"mcc\":\"234\",\"mnc\":\"34\",\"operator\":\"eeora-uk\",\"new_balance_in_pence\":3985.84,\"cost_in_pence\":15.0}}";
+    static final String PRICES_RESULT = prices();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    StubServer() throws IOException {
+        // without this responses sit in the kernel waiting for a delayed ack
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.createContext(Endpoint.SEND_SMS.path, handler(SMS_RESULT));
+        this.server.createContext(Endpoint.OPERATOR_LOOKUP.path, handler(OPERATOR_LOOKUP_RESULT));
+        this.server.createContext(Endpoint.PRICES.path, handler(PRICES_RESULT));
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private static HttpHandler handler(String body) {
+        final byte[] bytes = body.getBytes(Charset.forName("UTF-8"));
+        return new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // drain the request so the connection can be reused
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        };
+    }
+
+    // roughly the size of the real price list
+    private static String prices() {
+        StringBuilder body = new StringBuilder("{\"success\":{\"prices_in_pence\":{");
+        for (char a = 'A'; a <= 'Z'; a++) {
+            for (char b = 'A'; b <= 'J'; b++) {
+                if (a != 'A' || b != 'A') {
+                    body.append(',');
+                }
+                body.append('"').append(a).append(b).append("\":0.0").append(a - 'A' + 1);
+            }
+        }
+        return body.append("}}}").toString();
+    }
+}
@@ -0,0 +1,106 @@
+package io.zensend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for a burst of concurrent senders, one thread per sendSms call, to
+ * complete through the blocking client with the classic and the async
+ * transport.
+ *
+ * Senders run on virtual threads when the JVM has them (Java 21+) and on a
+ * pool of platform threads otherwise. Run with -jvmArgsAppend
+ * -Djdk.tracePinnedThreads=full to see where the classic transport pins
+ * carrier threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    @Param({"classic", "async"})
+    public String transport;
+
+    @Param({"10000"})
+    public int senders;
+
+    private StubServer server;
+    private Client client;
+    private ExecutorService executor;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = new StubServer();
+
+        ClientConfig config = new ClientConfig();
+        config.url = this.server.url();
+        config.verifyUrl = this.server.url();
+        config.maxTotalConnections = 256;
+        config.apiMaxConnections = 256;
+        // senders queue for a connection rather than failing
+        config.connectionRequestTimeoutInMilliseconds = 60 * 1000;
+        config.asyncTransport = "async".equals(this.transport);
+        this.client = new Client("API-KEY", config);
+        this.executor = newThreadPerTaskExecutor();
+
+        this.message = new Message();
+        this.message.body = "Your verification code is 123456";
+        this.message.originator = "ZenSend";
+        this.message.numbers = new String[]{"447777777777"};
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        this.executor.shutdown();
+        this.client.close();
+        this.server.stop();
+    }
+
+    @Benchmark
+    public int sendSms() throws Exception {
+        List<Future<SmsResult>> results = new ArrayList<Future<SmsResult>>(this.senders);
+        for (int i = 0; i < this.senders; i++) {
+            results.add(this.executor.submit(new Callable<SmsResult>() {
+                public SmsResult call() throws Exception {
+                    return client.sendSms(message);
+                }
+            }));
+        }
+        int numbers = 0;
+        for (Future<SmsResult> result : results) {
+            numbers += result.get().numbers;
+        }
+        return numbers;
+    }
+
+    // looked up reflectively so the benchmarks still build for Java 8
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(512);
+        }
+    }
+}
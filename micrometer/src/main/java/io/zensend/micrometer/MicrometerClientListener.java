@@ -0,0 +1,114 @@
+package io.zensend.micrometer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.zensend.ClientListener;
+import io.zensend.Endpoint;
+import io.zensend.ZenSendException;
+
+/**
+ * Publishes client events to a Micrometer {@link MeterRegistry}:
+ *
+ * zensend.requests - timer tagged with endpoint and outcome (success, failure or error)
+ * zensend.failures - counter tagged with endpoint and failcode
+ * zensend.response.size - distribution of response sizes tagged with endpoint
+ * zensend.pool.wait - timer of connection pool waits tagged with host
+ * zensend.sms.numbers, zensend.sms.parts, zensend.sms.cost - SMS sent and their cost in pence
+ *
+ * Meters are registered up front or cached on first use so recording
+ * doesn't look anything up in the registry.
+ */
+public class MicrometerClientListener implements ClientListener {
+    private final MeterRegistry registry;
+
+    private final Map<Endpoint, EndpointMeters> endpoints = new EnumMap<Endpoint, EndpointMeters>(Endpoint.class);
+    private final ConcurrentMap<String, Timer> poolWait = new ConcurrentHashMap<String, Timer>();
+
+    private final Counter smsNumbers;
+    private final Counter smsParts;
+    private final Counter smsCost;
+
+    public MicrometerClientListener(MeterRegistry registry) {
+        this.registry = registry;
+        for (Endpoint endpoint : Endpoint.values()) {
+            this.endpoints.put(endpoint, new EndpointMeters(registry, endpoint));
+        }
+        this.smsNumbers = registry.counter("zensend.sms.numbers");
+        this.smsParts = registry.counter("zensend.sms.parts");
+        this.smsCost = registry.counter("zensend.sms.cost");
+    }
+
+    public void onSuccess(Endpoint endpoint, int httpCode, long latencyNanos, long responseBytes) {
+        EndpointMeters meters = this.endpoints.get(endpoint);
+        meters.success.record(latencyNanos, TimeUnit.NANOSECONDS);
+        if (responseBytes >= 0) {
+            meters.responseSize.record(responseBytes);
+        }
+    }
+
+    public void onFailure(Endpoint endpoint, ZenSendException exception, long latencyNanos, long responseBytes) {
+        EndpointMeters meters = this.endpoints.get(endpoint);
+        meters.failure.record(latencyNanos, TimeUnit.NANOSECONDS);
+        if (responseBytes >= 0) {
+            meters.responseSize.record(responseBytes);
+        }
+
+        String failCode = exception.failCode != null ? exception.failCode : "NONE";
+        Counter counter = meters.failures.get(failCode);
+        if (counter == null) {
+            counter = meters.failures.computeIfAbsent(failCode,
+                code -> this.registry.counter("zensend.failures", "endpoint", meters.name, "failcode", code));
+        }
+        counter.increment();
+    }
+
+    public void onError(Endpoint endpoint, IOException exception, long latencyNanos) {
+        this.endpoints.get(endpoint).error.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void onSmsSent(int numbers, int smsParts, BigDecimal costInPence) {
+        this.smsNumbers.increment(numbers);
+        this.smsParts.increment((double) numbers * smsParts);
+        if (costInPence != null) {
+            this.smsCost.increment(costInPence.doubleValue());
+        }
+    }
+
+    public void onConnectionLeased(String host, long waitNanos) {
+        Timer timer = this.poolWait.get(host);
+        if (timer == null) {
+            timer = this.poolWait.computeIfAbsent(host, h -> this.registry.timer("zensend.pool.wait", "host", h));
+        }
+        timer.record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static class EndpointMeters {
+        final String name;
+        final Timer success;
+        final Timer failure;
+        final Timer error;
+        final DistributionSummary responseSize;
+        final ConcurrentMap<String, Counter> failures = new ConcurrentHashMap<String, Counter>();
+
+        EndpointMeters(MeterRegistry registry, Endpoint endpoint) {
+            this.name = endpoint.name().toLowerCase();
+            this.success = registry.timer("zensend.requests", "endpoint", this.name, "outcome", "success");
+            this.failure = registry.timer("zensend.requests", "endpoint", this.name, "outcome", "failure");
+            this.error = registry.timer("zensend.requests", "endpoint", this.name, "outcome", "error");
+            this.responseSize = DistributionSummary.builder("zensend.response.size")
+                .baseUnit("bytes")
+                .tag("endpoint", this.name)
+                .register(registry);
+        }
+    }
+}
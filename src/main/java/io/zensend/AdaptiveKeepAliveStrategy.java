@@ -0,0 +1,43 @@
+package io.zensend;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keeps connections alive for as long as the server's Keep-Alive header
+ * allows, less a margin so the client doesn't reuse a connection the server
+ * is just closing. Responses without the header use the default timeout.
+ */
+public class AdaptiveKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private static final long MARGIN_IN_MILLISECONDS = 500;
+
+    private final long defaultTimeoutInMilliseconds;
+    private final long maxTimeoutInMilliseconds;
+
+    public AdaptiveKeepAliveStrategy(long defaultTimeoutInMilliseconds, long maxTimeoutInMilliseconds) {
+        this.defaultTimeoutInMilliseconds = defaultTimeoutInMilliseconds;
+        this.maxTimeoutInMilliseconds = maxTimeoutInMilliseconds;
+    }
+
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        HeaderElementIterator elements = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+        while (elements.hasNext()) {
+            HeaderElement element = elements.nextElement();
+            if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                try {
+                    long timeout = Long.parseLong(element.getValue().trim()) * 1000 - MARGIN_IN_MILLISECONDS;
+                    // zero or less would keep the connection forever
+                    return Math.max(1, Math.min(timeout, this.maxTimeoutInMilliseconds));
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+        return this.defaultTimeoutInMilliseconds;
+    }
+}
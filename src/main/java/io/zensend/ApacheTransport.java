@@ -0,0 +1,201 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Transport backed by Apache HttpClient, the default for {@link Client}.
+ * Built from a {@link ClientConfig} it uses a pooled HTTP/1.1 client which
+ * can be warmed up ahead of the first request and kept warm in the
+ * background.
+ */
+public class ApacheTransport implements Transport {
+    private final CloseableHttpClient client;
+    // only known when built from a config
+    private final HttpClientConnectionManager connectionManager;
+    private final int warmUpConnections;
+    private final int connectTimeoutInMilliseconds;
+    private final int connectionRequestTimeoutInMilliseconds;
+    private final long keepAliveInMilliseconds;
+    private final ScheduledExecutorService keepWarm;
+
+    public ApacheTransport(CloseableHttpClient client) {
+        this.client = client;
+        this.connectionManager = null;
+        this.warmUpConnections = 0;
+        this.connectTimeoutInMilliseconds = 0;
+        this.connectionRequestTimeoutInMilliseconds = 0;
+        this.keepAliveInMilliseconds = 0;
+        this.keepWarm = null;
+    }
+
+    ApacheTransport(CloseableHttpClient client, HttpClientConnectionManager connectionManager, ClientConfig config) {
+        this.client = client;
+        this.connectionManager = connectionManager;
+        this.warmUpConnections = config.warmUpConnections;
+        this.connectTimeoutInMilliseconds = config.connectTimeoutInMilliseconds;
+        this.connectionRequestTimeoutInMilliseconds = config.connectionRequestTimeoutInMilliseconds;
+        this.keepAliveInMilliseconds = config.keepAliveInMilliseconds;
+
+        if (config.keepWarmIntervalInMilliseconds > 0) {
+            final String[] urls = config.url.equals(config.verifyUrl)
+                ? new String[]{config.url}
+                : new String[]{config.url, config.verifyUrl};
+            this.keepWarm = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "zensend-keep-warm");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.keepWarm.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    for (String url : urls) {
+                        try {
+                            warmUp(url);
+                        } catch (IOException e) {
+                            // tried again on the next run
+                        }
+                    }
+                }
+            }, config.keepWarmIntervalInMilliseconds, config.keepWarmIntervalInMilliseconds, TimeUnit.MILLISECONDS);
+        } else {
+            this.keepWarm = null;
+        }
+    }
+
+    public Response execute(Request request) throws IOException {
+        final CloseableHttpResponse response = this.client.execute(toHttpRequest(request));
+        return new ApacheResponse(response) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    response.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Makes sure warmUpConnections connections to the url's host are open in
+     * the pool, connecting new ones to replace any the server has closed.
+     * Only a transport built from a ClientConfig owns a pool it can fill, so
+     * one wrapping a caller's HttpClient, including the one used for
+     * {@link ClientConfig#asyncTransport}, throws IllegalStateException.
+     */
+    @Override
+    public String warmUp(String url) throws IOException {
+        if (this.connectionManager == null) {
+            throw new IllegalStateException("warmUp needs a connection pool built from a ClientConfig, "
+                + "which this transport doesn't have");
+        }
+
+        HttpRoute route = ClientConfig.route(url);
+        List<HttpClientConnection> leased = new ArrayList<HttpClientConnection>();
+        try {
+            // leasing them all at once makes the pool hand out distinct connections
+            for (int i = 0; i < this.warmUpConnections; i++) {
+                HttpClientConnection connection = lease(route);
+                leased.add(connection);
+
+                // the pool has already replaced connections that went stale
+                // while idle, see validateAfterInactivityInMilliseconds
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    this.connectionManager.connect(connection, route, this.connectTimeoutInMilliseconds, context);
+                    this.connectionManager.routeComplete(connection, route, context);
+                }
+            }
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                this.connectionManager.releaseConnection(connection, null, this.keepAliveInMilliseconds, TimeUnit.MILLISECONDS);
+            }
+        }
+        return "http/1.1";
+    }
+
+    public void close() throws IOException {
+        if (this.keepWarm != null) {
+            this.keepWarm.shutdownNow();
+        }
+        this.client.close();
+    }
+
+    private HttpClientConnection lease(HttpRoute route) throws IOException {
+        try {
+            return this.connectionManager.requestConnection(route, null)
+                .get(this.connectionRequestTimeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    static HttpRequestBase toHttpRequest(Request request) {
+        HttpRequestBase httpRequest;
+        if ("POST".equals(request.method)) {
+            HttpPost post = new HttpPost(request.url);
+            post.setEntity(request.body);
+            httpRequest = post;
+        } else {
+            httpRequest = new HttpGet(request.url);
+        }
+        for (Map.Entry<String, String> header : request.headers.entrySet()) {
+            httpRequest.addHeader(header.getKey(), header.getValue());
+        }
+        return httpRequest;
+    }
+
+    static class ApacheResponse extends Response {
+        private final HttpEntity entity;
+
+        ApacheResponse(HttpResponse response) throws IOException {
+            super(response.getStatusLine().getStatusCode(), contentType(response),
+                response.getEntity() == null ? 0 : response.getEntity().getContentLength(),
+                content(response.getEntity()));
+            this.entity = response.getEntity();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // reading to the end lets the connection be reused
+            EntityUtils.consume(this.entity);
+        }
+
+        private static String contentType(HttpResponse response) {
+            Header contentType = response.getFirstHeader("content-type");
+            return contentType == null ? null : contentType.getValue();
+        }
+
+        private static InputStream content(HttpEntity entity) throws IOException {
+            return entity == null ? null : entity.getContent();
+        }
+    }
+}
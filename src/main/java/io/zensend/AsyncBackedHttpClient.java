@@ -0,0 +1,143 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Blocking HttpClient which runs requests on a CloseableHttpAsyncClient.
+ *
+ * The calling thread only parks on a CompletableFuture while the I/O
+ * reactor does the work, so it never waits inside a synchronized block.
+ * The classic client's connection pool does, which pins the carrier thread
+ * of a virtual thread and limits how many can wait at once. Responses are
+ * buffered in memory by the async client before they're returned.
+ */
+final class AsyncBackedHttpClient extends CloseableHttpClient {
+    private final CloseableHttpAsyncClient client;
+    @SuppressWarnings("deprecation")
+    private final HttpParams params = new BasicHttpParams();
+
+    AsyncBackedHttpClient(CloseableHttpAsyncClient client) {
+        this.client = client;
+        if (!client.isRunning()) {
+            client.start();
+        }
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+            throws IOException, ClientProtocolException {
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+        Future<HttpResponse> future = this.client.execute(target, request, context, new FutureCallback<HttpResponse>() {
+            public void completed(HttpResponse response) {
+                result.complete(response);
+            }
+
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+
+        try {
+            return new Response(result.get());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ClientProtocolException(cause);
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("request cancelled");
+        }
+    }
+
+    public void close() throws IOException {
+        this.client.close();
+    }
+
+    // the deprecated accessors behave like InternalHttpClient's: the params
+    // are an empty set nothing reads, and the connection manager can only
+    // shut the client down since the async client keeps its own pool
+    @Deprecated
+    public HttpParams getParams() {
+        return this.params;
+    }
+
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        return new ClientConnectionManager() {
+            public SchemeRegistry getSchemeRegistry() {
+                return SchemeRegistryFactory.createDefault();
+            }
+
+            public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+                throw new UnsupportedOperationException();
+            }
+
+            public void releaseConnection(ManagedClientConnection conn, long validDuration, TimeUnit timeUnit) {
+                throw new UnsupportedOperationException();
+            }
+
+            public void closeExpiredConnections() {
+            }
+
+            public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+            }
+
+            public void shutdown() {
+                try {
+                    close();
+                } catch (IOException e) {
+                }
+            }
+        };
+    }
+
+    private static class Response extends BasicHttpResponse implements CloseableHttpResponse {
+        Response(HttpResponse response) {
+            super(response.getStatusLine());
+            setHeaders(response.getAllHeaders());
+            setEntity(response.getEntity());
+        }
+
+        public void close() throws IOException {
+            EntityUtils.consume(getEntity());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.zensend;
+
+import static io.zensend.Protocol.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Non-blocking version of {@link Client} backed by the NIO based
+ * {@link CloseableHttpAsyncClient}. Every method returns immediately with a
+ * {@link CompletableFuture} which is completed exceptionally with a
+ * {@link ZenSendException} or {@link IOException} in the same situations the
+ * blocking client would throw them.
+ *
+ * Futures are completed on the I/O reactor threads so any blocking work
+ * should be chained with the *Async variants of the CompletableFuture methods.
+ */
+public class AsyncClient implements Closeable {
+    private String apiKey;
+    private String url;
+    private String verifyUrl;
+
+    private CloseableHttpAsyncClient client;
+    private Map<Endpoint, RateLimiter> rateLimiters = Collections.emptyMap();
+    private Map<Endpoint, CircuitBreaker> circuitBreakers = Collections.emptyMap();
+    private Listeners listeners = Listeners.NONE;
+
+    private final BalanceTracker balanceTracker = new BalanceTracker(new BalanceTracker.BalanceSource() {
+        public BigDecimal checkBalance() throws ZenSendException, IOException {
+            return Futures.await(AsyncClient.this.checkBalance());
+        }
+    });
+
+    public AsyncClient(String apiKey) {
+        this(apiKey, new ClientConfig());
+    }
+
+    public AsyncClient(String apiKey, ClientConfig config) {
+        this(apiKey, config.createHttpAsyncClient(), config.url, config.verifyUrl);
+        this.rateLimiters = config.rateLimiters;
+        this.circuitBreakers = config.circuitBreakers;
+        this.listeners = Listeners.of(config.listeners);
+    }
+
+    public AsyncClient(String apiKey, CloseableHttpAsyncClient client) {
+        this(apiKey, client, ZENSEND_URL, VERIFY_URL);
+    }
+
+    public AsyncClient(String apiKey, CloseableHttpAsyncClient client, String url) {
+        this(apiKey, client, url, VERIFY_URL);
+    }
+
+    public AsyncClient(String apiKey, CloseableHttpAsyncClient client, String url, String verifyUrl) {
+        this.apiKey = apiKey;
+        this.url = url;
+        this.client = client;
+        this.verifyUrl = verifyUrl;
+
+        if (!client.isRunning()) {
+            client.start();
+        }
+    }
+
+    public void close() throws IOException {
+        client.close();
+    }
+
+    /**
+     * Tracks the balance reported by every response received by this client.
+     */
+    public BalanceTracker balanceTracker() {
+        return this.balanceTracker;
+    }
+
+    public CompletableFuture<String> createMsisdnVerification(String number) {
+        return createMsisdnVerification(number, null, null);
+    }
+
+    public CompletableFuture<String> createMsisdnVerification(String number, String message, String originator) {
+        return this.<CreateMsisdnVerificationResult>handleHttpResponse(Endpoint.CREATE_MSISDN_VERIFICATION,
+            createMsisdnVerificationRequest(this.verifyUrl, number, message, originator),
+            CREATE_MSISDN_VERIFICATION_RESULT_READER).thenApply(result -> result.session);
+    }
+
+    public CompletableFuture<String> msisdnVerificationStatus(String session) {
+        return this.<MsisdnVerificationStatusResult>handleHttpResponse(Endpoint.MSISDN_VERIFICATION_STATUS,
+            msisdnVerificationStatusRequest(this.verifyUrl, session),
+            MSISDN_VERIFICATION_STATUS_RESULT_READER).thenApply(result -> result.msisdn);
+    }
+
+    public CompletableFuture<SmsResult> sendSms(Message message) {
+        return handleHttpResponse(Endpoint.SEND_SMS, sendSmsRequest(this.url, message), SMS_RESULT_READER);
+    }
+
+    public CompletableFuture<OperatorLookupResult> lookupOperator(String number) {
+        return handleHttpResponse(Endpoint.OPERATOR_LOOKUP, lookupOperatorRequest(this.url, number),
+            OPERATOR_LOOKUP_RESULT_READER);
+    }
+
+    public CompletableFuture<HashMap<String, BigDecimal>> getPrices() {
+        return this.<Prices>handleHttpResponse(Endpoint.PRICES, getPricesRequest(this.url),
+            PRICES_READER).thenApply(result -> result.pricesInPence);
+    }
+
+    public CompletableFuture<BigDecimal> checkBalance() {
+        return this.<Balance>handleHttpResponse(Endpoint.CHECK_BALANCE, checkBalanceRequest(this.url),
+            BALANCE_READER).thenApply(result -> {
+                this.balanceTracker.update(result.balance);
+                return result.balance;
+            });
+    }
+
+    private <T> CompletableFuture<T> handleHttpResponse(Endpoint endpoint, Transport.Request request, ObjectReader reader) {
+
+        request.headers.put("X-API-KEY", this.apiKey);
+
+        RateLimiter rateLimiter = this.rateLimiters.get(endpoint);
+        if (rateLimiter == null) {
+            return attempt(endpoint, request, reader, null);
+        }
+
+        return rateLimiter.acquireAsync().thenCompose(acquired -> {
+            CompletableFuture<T> exchange = this.<T>attempt(endpoint, request, reader, rateLimiter);
+            exchange.whenComplete((value, ex) -> rateLimiter.release());
+            return exchange;
+        });
+    }
+
+    private <T> CompletableFuture<T> attempt(Endpoint endpoint, Transport.Request request, ObjectReader reader, RateLimiter rateLimiter) {
+        CircuitBreaker circuitBreaker = this.circuitBreakers.get(endpoint);
+        if (circuitBreaker == null) {
+            return execute(endpoint, request, reader, rateLimiter);
+        }
+
+        long permit = circuitBreaker.tryAcquire();
+        if (permit == CircuitBreaker.DENIED) {
+            CompletableFuture<T> failed = new CompletableFuture<T>();
+            failed.completeExceptionally(new CircuitOpenException(endpoint));
+            return failed;
+        }
+        CompletableFuture<T> exchange = this.<T>execute(endpoint, request, reader, rateLimiter);
+        exchange.whenComplete((value, ex) -> circuitBreaker.onOutcome(permit, ex));
+        return exchange;
+    }
+
+    private <T> CompletableFuture<T> execute(final Endpoint endpoint, Transport.Request request, final ObjectReader reader, final RateLimiter rateLimiter) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final long start = System.nanoTime();
+
+        final Future<HttpResponse> exchange = client.execute(ApacheTransport.toHttpRequest(request), new FutureCallback<HttpResponse>() {
+            public void completed(HttpResponse httpResponse) {
+                Transport.Response response = null;
+                try {
+                    response = new ApacheTransport.ApacheResponse(httpResponse);
+                    T parsed = Protocol.<T>parseResponse(response, reader);
+                    listeners.success(endpoint, response.status, System.nanoTime() - start,
+                        response.contentLength, parsed);
+                    balanceTracker.updateFrom(parsed);
+                    if (rateLimiter != null) {
+                        rateLimiter.onSuccess();
+                    }
+                    result.complete(parsed);
+                } catch (ZenSendException e) {
+                    listeners.failure(endpoint, e, System.nanoTime() - start, response.contentLength);
+                    balanceTracker.update(e.newBalanceInPence);
+                    if (rateLimiter != null && (e.httpCode == 429 || e.httpCode == 503)) {
+                        rateLimiter.onThrottled();
+                    }
+                    result.completeExceptionally(e);
+                } catch (IOException e) {
+                    listeners.error(endpoint, e, System.nanoTime() - start);
+                    result.completeExceptionally(e);
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    close(response);
+                }
+            }
+
+            public void failed(Exception ex) {
+                if (ex instanceof IOException) {
+                    listeners.error(endpoint, (IOException) ex, System.nanoTime() - start);
+                }
+                result.completeExceptionally(ex);
+            }
+
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+
+        // propagate cancellation by the caller to the underlying exchange
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+
+        return result;
+    }
+
+    private static void close(Transport.Response response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            response.close();
+        } catch (IOException e) {
+            // the outcome has already been reported
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of the account balance using the new_balance_in_pence value
+ * carried by SmsResult, OperatorLookupResult and ZenSendException, so callers
+ * don't need to poll checkBalance before sending.
+ *
+ * Every {@link Client} and {@link AsyncClient} feeds its own tracker from the
+ * responses it receives. {@link #currentBalanceInPence()} only makes a
+ * checkbalance request when the last known value is older than
+ * maxAgeInMilliseconds.
+ */
+public class BalanceTracker {
+    public static interface LowBalanceListener {
+        /**
+         * Called once each time the balance drops below thresholdInPence.
+         * Runs on the thread that received the response so it should be quick.
+         * An exception thrown here goes to that thread's uncaught exception
+         * handler; it doesn't fail the request, which has already been charged.
+         */
+        void onLowBalance(BigDecimal balanceInPence, BigDecimal thresholdInPence);
+    }
+
+    static interface BalanceSource {
+        BigDecimal checkBalance() throws ZenSendException, IOException;
+    }
+
+    private final BalanceSource source;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(Snapshot.UNKNOWN);
+    private final CopyOnWriteArrayList<Threshold> thresholds = new CopyOnWriteArrayList<Threshold>();
+
+    private volatile long maxAgeInMilliseconds = 60 * 1000;
+
+    BalanceTracker(BalanceSource source) {
+        this.source = source;
+    }
+
+    /**
+     * The most recently seen balance or null if none has been seen yet.
+     */
+    public BigDecimal balanceInPence() {
+        return this.snapshot.get().balanceInPence;
+    }
+
+    /**
+     * When the most recently seen balance was received, in milliseconds since
+     * the epoch, or 0 if none has been seen yet.
+     */
+    public long lastUpdated() {
+        return this.snapshot.get().timestamp;
+    }
+
+    /**
+     * The most recently seen balance, fetched with checkBalance if it is
+     * missing or older than maxAgeInMilliseconds.
+     */
+    public BigDecimal currentBalanceInPence() throws ZenSendException, IOException {
+        Snapshot current = this.snapshot.get();
+        if (current.balanceInPence != null
+                && System.currentTimeMillis() - current.timestamp <= this.maxAgeInMilliseconds) {
+            return current.balanceInPence;
+        }
+        // the client records the checkbalance result itself
+        return this.source.checkBalance();
+    }
+
+    public void setMaxAgeInMilliseconds(long maxAgeInMilliseconds) {
+        this.maxAgeInMilliseconds = maxAgeInMilliseconds;
+    }
+
+    public void addLowBalanceListener(BigDecimal thresholdInPence, LowBalanceListener listener) {
+        this.thresholds.add(new Threshold(thresholdInPence, listener));
+    }
+
+    public void removeLowBalanceListener(LowBalanceListener listener) {
+        for (Threshold threshold : this.thresholds) {
+            if (threshold.listener == listener) {
+                this.thresholds.remove(threshold);
+            }
+        }
+    }
+
+    void update(BigDecimal balanceInPence) {
+        if (balanceInPence == null) {
+            return;
+        }
+
+        Snapshot previous = this.snapshot.getAndSet(new Snapshot(balanceInPence, System.currentTimeMillis()));
+
+        for (Threshold threshold : this.thresholds) {
+            boolean wasAbove = previous.balanceInPence == null
+                || previous.balanceInPence.compareTo(threshold.thresholdInPence) >= 0;
+            if (wasAbove && balanceInPence.compareTo(threshold.thresholdInPence) < 0) {
+                notify(threshold, balanceInPence);
+            }
+        }
+    }
+
+    private static void notify(Threshold threshold, BigDecimal balanceInPence) {
+        try {
+            threshold.listener.onLowBalance(balanceInPence, threshold.thresholdInPence);
+        } catch (RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    void updateFrom(Object result) {
+        if (result instanceof SmsResult) {
+            update(((SmsResult) result).newBalanceInPence);
+        } else if (result instanceof OperatorLookupResult) {
+            update(((OperatorLookupResult) result).newBalanceInPence);
+        }
+    }
+
+    private static class Snapshot {
+        static final Snapshot UNKNOWN = new Snapshot(null, 0);
+
+        final BigDecimal balanceInPence;
+        final long timestamp;
+
+        Snapshot(BigDecimal balanceInPence, long timestamp) {
+            this.balanceInPence = balanceInPence;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class Threshold {
+        final BigDecimal thresholdInPence;
+        final LowBalanceListener listener;
+
+        Threshold(BigDecimal thresholdInPence, LowBalanceListener listener) {
+            this.thresholdInPence = thresholdInPence;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package io.zensend;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces messages that share a body, originator, originator type, time to
+ * live and encoding into a single multi-number sendSms request.
+ *
+ * A batch is sent once it holds maxNumbersPerRequest numbers or once the
+ * first message in it has waited maxLingerInMilliseconds, whichever comes
+ * first. Each caller's future is completed with an SmsResult covering just
+ * its own numbers: the txGuid, smsParts and balance are those of the
+ * combined request and the cost is apportioned by number count.
+ */
+public class BatchSender implements Closeable {
+    private final Client client;
+    private final int maxNumbersPerRequest;
+    private final long maxLingerInMilliseconds;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "zensend-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ExecutorService executor;
+
+    // guarded by batches
+    private final Map<BatchKey, Batch> batches = new HashMap<BatchKey, Batch>();
+    private boolean closed;
+
+    public BatchSender(Client client) {
+        this(client, 1000, 100);
+    }
+
+    public BatchSender(Client client, int maxNumbersPerRequest, long maxLingerInMilliseconds) {
+        this(client, maxNumbersPerRequest, maxLingerInMilliseconds, 4);
+    }
+
+    public BatchSender(Client client, int maxNumbersPerRequest, long maxLingerInMilliseconds, int maxConcurrentRequests) {
+        if (maxNumbersPerRequest < 1) {
+            throw new IllegalArgumentException("maxNumbersPerRequest must be positive");
+        }
+        this.client = client;
+        this.maxNumbersPerRequest = maxNumbersPerRequest;
+        this.maxLingerInMilliseconds = maxLingerInMilliseconds;
+        this.executor = Executors.newFixedThreadPool(maxConcurrentRequests);
+    }
+
+    public CompletableFuture<SmsResult> send(Message message) {
+        String[] numbers = Protocol.numbers(message);
+        if (numbers == null || numbers.length == 0) {
+            throw new IllegalArgumentException("At least one number is required");
+        }
+        Protocol.assertNoCommas(numbers);
+
+        BatchKey key = new BatchKey(message);
+        CompletableFuture<SmsResult> result = new CompletableFuture<SmsResult>();
+
+        synchronized (this.batches) {
+            if (this.closed) {
+                throw new IllegalStateException("BatchSender is closed");
+            }
+            Batch batch = this.batches.get(key);
+
+            if (batch != null && batch.numberCount + numbers.length > this.maxNumbersPerRequest) {
+                dispatch(batch);
+                batch = null;
+            }
+
+            if (batch == null) {
+                batch = new Batch(key);
+                this.batches.put(key, batch);
+                final Batch lingering = batch;
+                batch.lingerTask = this.scheduler.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (batches) {
+                            if (batches.get(lingering.key) == lingering) {
+                                dispatch(lingering);
+                            }
+                        }
+                    }
+                }, this.maxLingerInMilliseconds, TimeUnit.MILLISECONDS);
+            }
+
+            batch.add(numbers, result);
+
+            if (batch.numberCount >= this.maxNumbersPerRequest) {
+                dispatch(batch);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends all pending batches without waiting for them to fill up or linger.
+     */
+    public void flush() {
+        synchronized (this.batches) {
+            for (Batch batch : new ArrayList<Batch>(this.batches.values())) {
+                dispatch(batch);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting messages, flushes pending batches and waits for them to
+     * be sent. The underlying client is not closed.
+     */
+    public void close() {
+        synchronized (this.batches) {
+            this.closed = true;
+        }
+        flush();
+        this.scheduler.shutdownNow();
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // must be called while holding the batches lock
+    private void dispatch(final Batch batch) {
+        this.batches.remove(batch.key);
+        batch.lingerTask.cancel(false);
+        this.executor.execute(new Runnable() {
+            public void run() {
+                send(batch);
+            }
+        });
+    }
+
+    private void send(Batch batch) {
+        Message message = batch.key.toMessage();
+        message.numbers = batch.numbers.toArray(new String[batch.numbers.size()]);
+
+        SmsResult result;
+        try {
+            result = this.client.sendSms(message);
+        } catch (Exception e) {
+            for (Entry entry : batch.entries) {
+                entry.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        BigDecimal total = BigDecimal.valueOf(batch.numberCount);
+        for (Entry entry : batch.entries) {
+            SmsResult split = new SmsResult();
+            split.txGuid = result.txGuid;
+            split.numbers = entry.numberCount;
+            split.smsParts = result.smsParts;
+            split.encoding = result.encoding;
+            split.newBalanceInPence = result.newBalanceInPence;
+            if (result.costInPence != null) {
+                split.costInPence = result.costInPence
+                    .multiply(BigDecimal.valueOf(entry.numberCount))
+                    .divide(total, MathContext.DECIMAL64);
+            }
+            entry.result.complete(split);
+        }
+    }
+
+    private static class Entry {
+        final int numberCount;
+        final CompletableFuture<SmsResult> result;
+
+        Entry(int numberCount, CompletableFuture<SmsResult> result) {
+            this.numberCount = numberCount;
+            this.result = result;
+        }
+    }
+
+    private static class Batch {
+        final BatchKey key;
+        final List<String> numbers = new ArrayList<String>();
+        final List<Entry> entries = new ArrayList<Entry>();
+        int numberCount;
+        ScheduledFuture<?> lingerTask;
+
+        Batch(BatchKey key) {
+            this.key = key;
+        }
+
+        void add(String[] numbers, CompletableFuture<SmsResult> result) {
+            for (String number : numbers) {
+                this.numbers.add(number);
+            }
+            this.numberCount += numbers.length;
+            this.entries.add(new Entry(numbers.length, result));
+        }
+    }
+
+    private static final class BatchKey {
+        final String body;
+        final String originator;
+        final Message.OriginatorType originatorType;
+        final Integer timeToLiveInMinutes;
+        final Message.SmsEncoding smsEncoding;
+
+        BatchKey(Message message) {
+            this.body = message.body;
+            this.originator = message.originator;
+            this.originatorType = message.originatorType;
+            this.timeToLiveInMinutes = message.timeToLiveInMinutes;
+            this.smsEncoding = message.smsEncoding;
+        }
+
+        Message toMessage() {
+            Message message = new Message();
+            message.body = this.body;
+            message.originator = this.originator;
+            message.originatorType = this.originatorType;
+            message.timeToLiveInMinutes = this.timeToLiveInMinutes;
+            message.smsEncoding = this.smsEncoding;
+            return message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey other = (BatchKey) o;
+            return Objects.equals(this.body, other.body)
+                && Objects.equals(this.originator, other.originator)
+                && this.originatorType == other.originatorType
+                && Objects.equals(this.timeToLiveInMinutes, other.timeToLiveInMinutes)
+                && this.smsEncoding == other.smsEncoding;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.body, this.originator, this.originatorType, this.timeToLiveInMinutes, this.smsEncoding);
+        }
+    }
+}
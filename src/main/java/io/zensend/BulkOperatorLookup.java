@@ -0,0 +1,170 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Looks up the operators of many numbers in parallel.
+ *
+ * Duplicate numbers are looked up once and at most maxConcurrentRequests
+ * lookups are in flight. A failed lookup doesn't stop the others; its
+ * exception is reported along with the number. The cost of every lookup,
+ * including failed ones ZenSend charged for, is added up.
+ */
+public class BulkOperatorLookup {
+    /**
+     * Called from the worker threads as each lookup completes so
+     * implementations must be thread safe.
+     */
+    public static interface ResultListener {
+        void onResult(String number, OperatorLookupResult result);
+
+        void onFailure(String number, Exception exception);
+
+        default void onProgress(long completed, long total) {
+        }
+    }
+
+    public static class Results {
+        public final Map<String, OperatorLookupResult> results;
+        public final Map<String, Exception> failures;
+        public final BigDecimal costInPence;
+
+        Results(Map<String, OperatorLookupResult> results, Map<String, Exception> failures, BigDecimal costInPence) {
+            this.results = results;
+            this.failures = failures;
+            this.costInPence = costInPence;
+        }
+    }
+
+    private final Client client;
+    private final int maxConcurrentRequests;
+
+    public BulkOperatorLookup(Client client) {
+        this(client, 16);
+    }
+
+    public BulkOperatorLookup(Client client, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive");
+        }
+        this.client = client;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Looks up every distinct number and returns the results and failures
+     * keyed by number once they have all completed.
+     */
+    public Results lookupOperators(Collection<String> numbers) throws IOException {
+        final Map<String, OperatorLookupResult> results = new LinkedHashMap<String, OperatorLookupResult>();
+        final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+        BigDecimal cost = lookupOperators(numbers, new ResultListener() {
+            public void onResult(String number, OperatorLookupResult result) {
+                synchronized (results) {
+                    results.put(number, result);
+                }
+            }
+
+            public void onFailure(String number, Exception exception) {
+                synchronized (failures) {
+                    failures.put(number, exception);
+                }
+            }
+        });
+        return new Results(Collections.unmodifiableMap(results), Collections.unmodifiableMap(failures), cost);
+    }
+
+    /**
+     * Looks up every distinct number, passing each outcome to the listener as
+     * soon as it completes, and returns the total cost once they're all done.
+     */
+    public BigDecimal lookupOperators(Collection<String> numbers, final ResultListener listener) throws IOException {
+        Set<String> distinct = new LinkedHashSet<String>();
+        for (String number : numbers) {
+            String trimmed = number.trim();
+            if (!trimmed.isEmpty()) {
+                distinct.add(trimmed);
+            }
+        }
+
+        final long total = distinct.size();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicReference<BigDecimal> cost = new AtomicReference<BigDecimal>(BigDecimal.ZERO);
+        final Semaphore inFlight = new Semaphore(this.maxConcurrentRequests);
+        ExecutorService executor = Executors.newFixedThreadPool(this.maxConcurrentRequests);
+
+        try {
+            for (final String number : distinct) {
+                inFlight.acquire();
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            lookup(number, listener, cost);
+                        } finally {
+                            try {
+                                listener.onProgress(completed.incrementAndGet(), total);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    }
+                });
+            }
+
+            // wait for the outstanding lookups
+            inFlight.acquire(this.maxConcurrentRequests);
+            return cost.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void lookup(String number, ResultListener listener, AtomicReference<BigDecimal> cost) {
+        OperatorLookupResult result;
+        try {
+            result = this.client.lookupOperator(number);
+        } catch (ZenSendException e) {
+            // failed lookups can still be charged for
+            add(cost, e.costInPence);
+            listener.onFailure(number, e);
+            return;
+        } catch (Exception e) {
+            listener.onFailure(number, e);
+            return;
+        }
+        add(cost, result.costInPence);
+        listener.onResult(number, result);
+    }
+
+    private static void add(AtomicReference<BigDecimal> total, BigDecimal cost) {
+        if (cost == null) {
+            return;
+        }
+        BigDecimal current;
+        do {
+            current = total.get();
+        } while (!total.compareAndSet(current, current.add(cost)));
+    }
+}
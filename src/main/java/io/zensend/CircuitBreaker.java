@@ -0,0 +1,198 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Stops requests to an endpoint that keeps failing so callers fail fast with
+ * a {@link CircuitOpenException} instead of each waiting for a timeout.
+ * Register one per endpoint in {@link ClientConfig#circuitBreakers}.
+ *
+ * The outcomes of the last windowSize requests are kept; I/O errors and 5xx
+ * responses count as failures. Once at least minimumCalls have been made and
+ * the failure rate reaches failureRateThreshold the circuit opens. After
+ * openDurationInMilliseconds it's half open and lets halfOpenCalls trial
+ * requests through: if they all succeed it closes again, a single failure
+ * opens it for another period. Outcomes only count in the state their request
+ * was let through in, so a slow request from before the circuit opened can't
+ * close or reopen it.
+ */
+public class CircuitBreaker {
+    public static enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    // returned by tryAcquire when a request isn't permitted
+    static final long DENIED = -1;
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationInMilliseconds;
+    private final int halfOpenCalls;
+
+    // ring buffer of the most recent outcomes, true for a failure
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    // changes with every change of state, permits carry the one they were issued in
+    private long generation;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    public CircuitBreaker() {
+        this(0.5, 20, 100, 30 * 1000, 5);
+    }
+
+    public CircuitBreaker(double failureRateThreshold, int minimumCalls, int windowSize,
+            long openDurationInMilliseconds, int halfOpenCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("windowSize, minimumCalls and halfOpenCalls must be positive "
+                + "and minimumCalls no more than windowSize");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.window = new boolean[windowSize];
+        this.openDurationInMilliseconds = openDurationInMilliseconds;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public synchronized State state() {
+        return currentState(System.currentTimeMillis());
+    }
+
+    /**
+     * The failure rate over the current window, 0 if it's empty.
+     */
+    public synchronized double failureRate() {
+        return this.windowCount == 0 ? 0 : (double) this.windowFailures / this.windowCount;
+    }
+
+    /**
+     * Closes the circuit and forgets the recorded outcomes.
+     */
+    public synchronized void reset() {
+        close();
+    }
+
+    /**
+     * Returns a permit for a request to be made now, or DENIED. Every permit
+     * must be passed back to onSuccess, onFailure or onCancelled.
+     */
+    synchronized long tryAcquire() {
+        switch (currentState(System.currentTimeMillis())) {
+        case OPEN:
+            return DENIED;
+        case HALF_OPEN:
+            if (this.trialsStarted >= this.halfOpenCalls) {
+                return DENIED;
+            }
+            this.trialsStarted++;
+            return this.generation;
+        default:
+            return this.generation;
+        }
+    }
+
+    synchronized void onSuccess(long permit) {
+        if (permit != this.generation) {
+            return;
+        }
+        if (this.state == State.HALF_OPEN) {
+            if (++this.trialsSucceeded >= this.halfOpenCalls) {
+                close();
+            }
+        } else if (this.state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(long permit) {
+        if (permit != this.generation) {
+            return;
+        }
+        if (this.state == State.HALF_OPEN) {
+            open();
+        } else if (this.state == State.CLOSED) {
+            record(true);
+            if (this.windowCount >= this.minimumCalls
+                    && (double) this.windowFailures / this.windowCount >= this.failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * The request ended without telling us anything about the endpoint, e.g.
+     * the caller was interrupted.
+     */
+    synchronized void onCancelled(long permit) {
+        if (permit == this.generation && this.state == State.HALF_OPEN && this.trialsStarted > 0) {
+            this.trialsStarted--;
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted request, null if it succeeded.
+     */
+    void onOutcome(long permit, Throwable e) {
+        if (e == null) {
+            onSuccess(permit);
+        } else if (e instanceof ZenSendException) {
+            // the endpoint answered; only server errors mean it's unhealthy
+            if (((ZenSendException) e).httpCode >= 500) {
+                onFailure(permit);
+            } else {
+                onSuccess(permit);
+            }
+        } else if (e.getClass() == InterruptedIOException.class || !(e instanceof IOException)) {
+            onCancelled(permit);
+        } else {
+            onFailure(permit);
+        }
+    }
+
+    private State currentState(long now) {
+        if (this.state == State.OPEN && now - this.openedAt >= this.openDurationInMilliseconds) {
+            this.state = State.HALF_OPEN;
+            this.generation++;
+            this.trialsStarted = 0;
+            this.trialsSucceeded = 0;
+        }
+        return this.state;
+    }
+
+    private void record(boolean failure) {
+        if (this.windowCount == this.window.length) {
+            if (this.window[this.windowIndex]) {
+                this.windowFailures--;
+            }
+        } else {
+            this.windowCount++;
+        }
+        this.window[this.windowIndex] = failure;
+        if (failure) {
+            this.windowFailures++;
+        }
+        this.windowIndex = (this.windowIndex + 1) % this.window.length;
+    }
+
+    private void open() {
+        this.state = State.OPEN;
+        this.generation++;
+        this.openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        this.state = State.CLOSED;
+        this.generation++;
+        this.windowIndex = 0;
+        this.windowCount = 0;
+        this.windowFailures = 0;
+    }
+}
@@ -0,0 +1,18 @@
+package io.zensend;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link Client} while an endpoint's {@link CircuitBreaker} is open.
+ * The request was not sent and is never retried.
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public final Endpoint endpoint;
+
+    public CircuitOpenException(Endpoint endpoint) {
+        super("Circuit open for " + endpoint);
+        this.endpoint = endpoint;
+    }
+}
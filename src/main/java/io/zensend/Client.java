@@ -1,45 +1,46 @@
 package io.zensend;
 
+import static io.zensend.Protocol.*;
+
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.Header;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.fluent.Form;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
-public class Client implements Closeable {
+public class Client implements Closeable, BalanceTracker.BalanceSource {
     private String apiKey;
     private String url;
     private String verifyUrl;
-    private static final String ZENSEND_URL = "https://api.zensend.io";
-    private static final String VERIFY_URL = "https://verify.zensend.io";
 
-    private CloseableHttpClient client;
+    private Transport transport;
+    private RetryPolicy retryPolicy;
+    private Map<Endpoint, RateLimiter> rateLimiters = Collections.emptyMap();
+    private Map<Endpoint, CircuitBreaker> circuitBreakers = Collections.emptyMap();
+    private Listeners listeners = Listeners.NONE;
+    // tenants of a TenantPool leave closing the transport to the pool
+    private boolean sharedTransport;
+
+    private final BalanceTracker balanceTracker = new BalanceTracker(this);
     
     public Client(String apiKey) {
-        this(apiKey, HttpClients.custom()
-                .setKeepAliveStrategy(new FixedKeepAliveStrategy(5 * 1000))
-                .build(), ZENSEND_URL);
+        this(apiKey, new ClientConfig());
+    }
+
+    public Client(String apiKey, ClientConfig config) {
+        this(apiKey, config.createTransport(), config.url, config.verifyUrl);
+        this.retryPolicy = config.retryPolicy;
+        this.rateLimiters = config.rateLimiters;
+        this.circuitBreakers = config.circuitBreakers;
+        this.listeners = Listeners.of(config.listeners);
     }
 
     public Client(String apiKey, CloseableHttpClient client) {
@@ -51,14 +52,60 @@ public class Client implements Closeable {
     }
 
     public Client(String apiKey, CloseableHttpClient client, String url, String verifyUrl) {
+        this(apiKey, new ApacheTransport(client), url, verifyUrl);
+    }
+
+    public Client(String apiKey, Transport transport) {
+        this(apiKey, transport, ZENSEND_URL, VERIFY_URL);
+    }
+
+    public Client(String apiKey, Transport transport, String url, String verifyUrl) {
         this.apiKey = apiKey;
         this.url = url;
-        this.client = client;
+        this.transport = transport;
         this.verifyUrl = verifyUrl;
     }
 
+    /**
+     * A tenant sharing the pool's transport and config, with its own API key,
+     * rate limiters, retry budget and balance tracker.
+     */
+    Client(String apiKey, TenantPool pool, Map<Endpoint, RateLimiter> rateLimiters) {
+        this(apiKey, pool.transport, pool.config.url, pool.config.verifyUrl);
+        // the policy's retry budget is per client
+        this.retryPolicy = pool.config.retryPolicy == null ? null : pool.config.retryPolicy.copy();
+        this.rateLimiters = rateLimiters;
+        this.circuitBreakers = pool.config.circuitBreakers;
+        this.listeners = pool.listeners;
+        this.sharedTransport = true;
+    }
+
+    /**
+     * Closes the transport, unless the client is a {@link TenantPool} tenant
+     * in which case closing the pool does.
+     */
     public void close() throws IOException {
-        client.close();
+        if (!this.sharedTransport) {
+            transport.close();
+        }
+    }
+
+    /**
+     * Opens connections to the api and verify hosts so the first requests
+     * don't pay for the TCP and TLS handshakes.
+     */
+    public void warmUp() throws IOException {
+        this.transport.warmUp(this.url);
+        if (!this.verifyUrl.equals(this.url)) {
+            this.transport.warmUp(this.verifyUrl);
+        }
+    }
+
+    /**
+     * Tracks the balance reported by every response received by this client.
+     */
+    public BalanceTracker balanceTracker() {
+        return this.balanceTracker;
     }
 
     public String createMsisdnVerification(String number) throws ZenSendException, IOException {
@@ -66,193 +113,154 @@ public class Client implements Closeable {
     }
 
     public String createMsisdnVerification(String number, String message, String originator) throws ZenSendException, IOException {
-        Form form = Form.form();
-        form.add("NUMBER", number);
-
-
-        if (message != null) {
-            form.add("MESSAGE", message);
-        }
-
-        if (originator != null) {
-            form.add("ORIGINATOR", originator);
-        }
-    
-        HttpPost post = new HttpPost(this.verifyUrl + "/api/msisdn_verify");
-        post.setEntity(new UrlEncodedFormEntity(form.build(), "utf-8"));
-
-        return handleHttpResponse(post, new TypeReference<Result<CreateMsisdnVerificationResult>>(){}).session;
+        return this.<CreateMsisdnVerificationResult>handleHttpResponse(Endpoint.CREATE_MSISDN_VERIFICATION,
+            createMsisdnVerificationRequest(this.verifyUrl, number, message, originator),
+            CREATE_MSISDN_VERIFICATION_RESULT_READER).session;
     }
 
     public String msisdnVerificationStatus(String session) throws ZenSendException, IOException {
-        URI uri;
-        
-        try {
-            uri = new URIBuilder(this.verifyUrl + "/api/msisdn_verify").addParameter("SESSION", session).build();
-        } catch (URISyntaxException e) {
-            throw new IllegalStateException(e);
-        }
-        
-        HttpGet get = new HttpGet(uri);
-        
-        return handleHttpResponse(get,
-            new TypeReference<Result<MsisdnVerificationStatusResult>>(){}).msisdn;
+        return this.<MsisdnVerificationStatusResult>handleHttpResponse(Endpoint.MSISDN_VERIFICATION_STATUS,
+            msisdnVerificationStatusRequest(this.verifyUrl, session),
+            MSISDN_VERIFICATION_STATUS_RESULT_READER).msisdn;
 
     }
 
     public SmsResult sendSms(Message message) throws ZenSendException, IOException {
-        assertNoCommas(message.numbers);
-
-        Form form = Form.form()
-                .add("BODY", message.body)
-                .add("NUMBERS", StringUtils.join(message.numbers, ","))
-                .add("ORIGINATOR", message.originator);
-                
-        if (message.originatorType != null) {
-            form = form.add("ORIGINATOR_TYPE", message.originatorType.name().toLowerCase());
-        }
-
-        if (message.timeToLiveInMinutes != null) {
-            form = form.add("TIMETOLIVE", message.timeToLiveInMinutes.toString());
-        }
-
-        if (message.smsEncoding != null) {
-            form = form.add("ENCODING", message.smsEncoding.name().toLowerCase());
-        }
-
-        HttpPost post = new HttpPost(this.url + "/v3/sendsms");
-        post.setEntity(new UrlEncodedFormEntity(form.build(), "utf-8"));
-        
-        return handleHttpResponse(post, new TypeReference<Result<SmsResult>>(){});
-
-
-        
+        return handleHttpResponse(Endpoint.SEND_SMS, sendSmsRequest(this.url, message), SMS_RESULT_READER);
     }
 
     public OperatorLookupResult lookupOperator(String number) throws ZenSendException, IOException {
-        
-        URI uri;
-        
-        try {
-            uri = new URIBuilder(this.url + "/v3/operator_lookup").addParameter("NUMBER", number).build();
-        } catch (URISyntaxException e) {
-            throw new IllegalStateException(e);
-        }
-        
-        HttpGet get = new HttpGet(uri);
-        
-        return handleHttpResponse(get,
-            new TypeReference<Result<OperatorLookupResult>>(){});
+        return handleHttpResponse(Endpoint.OPERATOR_LOOKUP, lookupOperatorRequest(this.url, number),
+            OPERATOR_LOOKUP_RESULT_READER);
+
+    }
 
+    /**
+     * Looks up the operators of many numbers in parallel, see
+     * {@link BulkOperatorLookup}.
+     */
+    public BulkOperatorLookup.Results lookupOperators(Collection<String> numbers) throws IOException {
+        return new BulkOperatorLookup(this).lookupOperators(numbers);
     }
 
     public HashMap<String, BigDecimal> getPrices() throws  ZenSendException, IOException {
-        
-        HttpGet get = new HttpGet(this.url + "/v3/prices");
-        
-        return handleHttpResponse(get,
-            new TypeReference<Result<Prices>>(){}).pricesInPence;
+        return this.<Prices>handleHttpResponse(Endpoint.PRICES, getPricesRequest(this.url),
+            PRICES_READER).pricesInPence;
     }
 
     public BigDecimal checkBalance() throws ZenSendException, IOException {
-        
-        HttpGet get = new HttpGet(this.url + "/v3/checkbalance");
-
-        return handleHttpResponse(get,
-            new TypeReference<Result<Balance>>(){}).balance;
+        BigDecimal balance = this.<Balance>handleHttpResponse(Endpoint.CHECK_BALANCE, checkBalanceRequest(this.url),
+            BALANCE_READER).balance;
+        this.balanceTracker.update(balance);
+        return balance;
         
 
     }
 
-    private void assertNoCommas(String[] numbers) {
-        for (String number : numbers) {
-            if (number.contains(",")) {
-                throw new IllegalArgumentException("Comma not allowed in numbers");
-            }
-        }
-    }
-
-    private <T> T handleHttpResponse(HttpRequestBase request, final TypeReference<Result<T>> typeRef) throws ZenSendException, IOException {
+    private <T> T handleHttpResponse(Endpoint endpoint, Transport.Request request, ObjectReader reader) throws ZenSendException, IOException {
         
-        request.addHeader("X-API-KEY", this.apiKey);
+        request.headers.put("X-API-KEY", this.apiKey);
+
+        RateLimiter rateLimiter = this.rateLimiters.get(endpoint);
+        if (rateLimiter != null) {
+            acquire(endpoint, rateLimiter);
+        }
 
-        CloseableHttpResponse response = client.execute(request);
         try {
-            Header contentType = response.getFirstHeader("content-type");
-            
-            if (!(contentType != null && "application/json".equals(contentType.getValue()))) {
-                EntityUtils.consume(response.getEntity());
-                throw new ZenSendException(response.getStatusLine().getStatusCode(), null, null, null, null);
+            if (this.retryPolicy == null) {
+                return attempt(endpoint, request, reader, rateLimiter);
             }
 
-            ObjectMapper mapper = new ObjectMapper();
-             
-            Result<T> result = mapper.readValue(new InputStreamReader(response.getEntity().getContent(), Charset.forName("UTF-8")), typeRef);
-
-            if (result.success == null) {
-                handleError(response.getStatusLine().getStatusCode(), result.failure);
+            this.retryPolicy.onRequest();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return attempt(endpoint, request, reader, rateLimiter);
+                } catch (ZenSendException e) {
+                    if (!this.retryPolicy.shouldRetry(e, endpoint.idempotent, attempt)) {
+                        throw e;
+                    }
+                } catch (IOException e) {
+                    if (!this.retryPolicy.shouldRetry(e, endpoint.idempotent, attempt)) {
+                        throw e;
+                    }
+                }
+                this.retryPolicy.backoff(attempt);
             }
-
-            return result.success;            
         } finally {
-            response.close();
+            if (rateLimiter != null) {
+                rateLimiter.release();
+            }
         }
-      
-
     }
 
-    private void handleError(int httpCode, ZenSendError error) throws ZenSendException {
-        if (error != null) {
-            throw new ZenSendException(
-                httpCode,
-                error.failCode,
-                error.parameter,
-                error.costInPence,
-                error.newBalanceInPence);
-        } else {
-            throw new ZenSendException(httpCode, null, null, null, null);
+    private static void acquire(Endpoint endpoint, RateLimiter rateLimiter) throws IOException {
+        try {
+            if (!rateLimiter.acquire(rateLimiter.maxWaitInMilliseconds, TimeUnit.MILLISECONDS)) {
+                throw new RateLimitExceededException(endpoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
         }
     }
 
-    // helper classes
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class ZenSendError {
-        @JsonProperty("failcode")
-        public String failCode;
-
-        public String parameter;
-
-        @JsonProperty("cost_in_pence")
-        public BigDecimal costInPence;
-
-        @JsonProperty("new_balance_in_pence")
-        public BigDecimal newBalanceInPence;
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class Result<T> {
-        public T success;
-        public ZenSendError failure;
-    }
-
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class Balance {
-        public BigDecimal balance;
-    }
+    private <T> T attempt(Endpoint endpoint, Transport.Request request, ObjectReader reader, RateLimiter rateLimiter) throws ZenSendException, IOException {
+        CircuitBreaker circuitBreaker = this.circuitBreakers.get(endpoint);
+        if (circuitBreaker == null) {
+            return execute(endpoint, request, reader, rateLimiter);
+        }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class Prices {
-        @JsonProperty("prices_in_pence")
-        public HashMap<String, BigDecimal> pricesInPence;
+        long permit = circuitBreaker.tryAcquire();
+        if (permit == CircuitBreaker.DENIED) {
+            throw new CircuitOpenException(endpoint);
+        }
+        try {
+            T result = execute(endpoint, request, reader, rateLimiter);
+            circuitBreaker.onOutcome(permit, null);
+            return result;
+        } catch (ZenSendException e) {
+            circuitBreaker.onOutcome(permit, e);
+            throw e;
+        } catch (IOException e) {
+            circuitBreaker.onOutcome(permit, e);
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onOutcome(permit, e);
+            throw e;
+        }
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class CreateMsisdnVerificationResult {
-        public String session;
-    }
+    private <T> T execute(Endpoint endpoint, Transport.Request request, ObjectReader reader, RateLimiter rateLimiter) throws ZenSendException, IOException {
+        long start = System.nanoTime();
+        Transport.Response response;
+        try {
+            response = transport.execute(request);
+        } catch (IOException e) {
+            this.listeners.error(endpoint, e, System.nanoTime() - start);
+            throw e;
+        }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private static class MsisdnVerificationStatusResult {
-        public String msisdn;
+        try {
+            T result = Protocol.parseResponse(response, reader);
+            this.listeners.success(endpoint, response.status, System.nanoTime() - start,
+                response.contentLength, result);
+            this.balanceTracker.updateFrom(result);
+            if (rateLimiter != null) {
+                rateLimiter.onSuccess();
+            }
+            return result;
+        } catch (ZenSendException e) {
+            this.listeners.failure(endpoint, e, System.nanoTime() - start, response.contentLength);
+            this.balanceTracker.update(e.newBalanceInPence);
+            if (rateLimiter != null && (e.httpCode == 429 || e.httpCode == 503)) {
+                rateLimiter.onThrottled();
+            }
+            throw e;
+        } catch (IOException e) {
+            this.listeners.error(endpoint, e, System.nanoTime() - start);
+            throw e;
+        } finally {
+            response.close();
+        }
     }
 }
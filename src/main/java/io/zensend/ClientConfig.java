@@ -0,0 +1,228 @@
+package io.zensend;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * Settings used to build the pooled HTTP client behind a {@link Client} or
+ * {@link AsyncClient}. The defaults are sized for concurrent use; adjust the
+ * fields before passing the config to a client constructor.
+ */
+public class ClientConfig {
+    public String url = Protocol.ZENSEND_URL;
+    public String verifyUrl = Protocol.VERIFY_URL;
+
+    // connection pool sizing. the api and verify hosts get their own limits
+    // so heavy SMS traffic can't starve verification requests and vice versa
+    public int maxTotalConnections = 200;
+    public int maxConnectionsPerRoute = 20;
+    public int apiMaxConnections = 100;
+    public int verifyMaxConnections = 50;
+
+    public int connectTimeoutInMilliseconds = 5 * 1000;
+    public int socketTimeoutInMilliseconds = 30 * 1000;
+    public int connectionRequestTimeoutInMilliseconds = 5 * 1000;
+
+    // used when the server doesn't send a Keep-Alive header
+    public long keepAliveInMilliseconds = 5 * 1000;
+    // connections idle for longer than this are closed by a background thread
+    public long maxIdleTimeInMilliseconds = 30 * 1000;
+    // pooled connections unused for longer than this are checked before reuse
+    public int validateAfterInactivityInMilliseconds = 2 * 1000;
+
+    // retries are disabled unless a policy is set. only used by Client
+    public RetryPolicy retryPolicy;
+
+    // endpoints without a limiter aren't rate limited
+    public final Map<Endpoint, RateLimiter> rateLimiters = new EnumMap<Endpoint, RateLimiter>(Endpoint.class);
+
+    // endpoints without a breaker are always called
+    public final Map<Endpoint, CircuitBreaker> circuitBreakers = new EnumMap<Endpoint, CircuitBreaker>(Endpoint.class);
+
+    // notified of every request, see ClientMetrics for a built-in listener
+    public final List<ClientListener> listeners = new ArrayList<ClientListener>();
+
+    // run a Client's requests on the NIO client so callers wait on a future
+    // instead of blocking inside the classic connection pool's monitors,
+    // which pin the carrier when the caller is a virtual thread. The NIO
+    // client keeps its own pool, so warmUp isn't supported and
+    // keepWarmIntervalInMilliseconds is ignored
+    public boolean asyncTransport;
+
+    // used by Client instead of an Apache HttpClient built from these
+    // settings when set, e.g. an OkHttpTransport for HTTP/2
+    public Transport transport;
+
+    // send Client requests with OkHttp over HTTP/2, so concurrent requests to
+    // a host share one connection. falls back to HTTP/1.1 when the server
+    // doesn't negotiate h2. needs the optional okhttp dependency
+    public boolean http2;
+    // requests in flight per host, i.e. streams on the shared connection
+    public int http2MaxConcurrentStreams = 100;
+    // idle connections kept open across both hosts
+    public int http2MaxIdleConnections = 4;
+
+    // connections Client.warmUp opens to each host
+    public int warmUpConnections = 4;
+    // how often the pool is topped back up to warmUpConnections open
+    // connections per host, replacing any the server closed, so requests
+    // after a lull don't wait for new connections. 0 disables it
+    public long keepWarmIntervalInMilliseconds = 0;
+
+    // TLS sessions are cached so new connections to a host resume them with
+    // an abbreviated handshake. null keeps the JDK's cache size
+    public Integer tlsSessionCacheSize;
+    public int tlsSessionTimeoutInSeconds = 24 * 60 * 60;
+
+    Transport createTransport() {
+        if (this.transport != null) {
+            return this.transport;
+        }
+        if (this.http2) {
+            return new OkHttpTransport(this);
+        }
+        if (this.asyncTransport) {
+            return new ApacheTransport(new AsyncBackedHttpClient(createHttpAsyncClient()));
+        }
+        PoolingHttpClientConnectionManager connectionManager = createConnectionManager();
+        return new ApacheTransport(createHttpClient(connectionManager), connectionManager, this);
+    }
+
+    PoolingHttpClientConnectionManager createConnectionManager() {
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", new SSLConnectionSocketFactory(sslContext()))
+            .build();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(this.maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+        connectionManager.setMaxPerRoute(route(this.url), this.apiMaxConnections);
+        connectionManager.setMaxPerRoute(route(this.verifyUrl), this.verifyMaxConnections);
+        connectionManager.setValidateAfterInactivity(this.validateAfterInactivityInMilliseconds);
+        return connectionManager;
+    }
+
+    CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+        HttpClientBuilder builder = HttpClients.custom();
+        if (this.retryPolicy != null) {
+            // the retry policy replaces HttpClient's own retries
+            builder.disableAutomaticRetries();
+        }
+
+        Listeners listeners = Listeners.of(this.listeners);
+        return builder
+            .setConnectionManager(listeners.isEmpty()
+                ? connectionManager
+                : new InstrumentedConnectionManager(connectionManager, listeners))
+            .setDefaultRequestConfig(requestConfig())
+            .setKeepAliveStrategy(keepAliveStrategy())
+            .evictExpiredConnections()
+            .evictIdleConnections(this.maxIdleTimeInMilliseconds, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    CloseableHttpAsyncClient createHttpAsyncClient() {
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+            .setConnectTimeout(this.connectTimeoutInMilliseconds)
+            .setSoTimeout(this.socketTimeoutInMilliseconds)
+            .build();
+
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig),
+                RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(sslContext()))
+                    .build());
+        } catch (IOReactorException e) {
+            throw new IllegalStateException(e);
+        }
+        connectionManager.setMaxTotal(this.maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+        connectionManager.setMaxPerRoute(route(this.url), this.apiMaxConnections);
+        connectionManager.setMaxPerRoute(route(this.verifyUrl), this.verifyMaxConnections);
+
+        return HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig())
+            .setKeepAliveStrategy(keepAliveStrategy())
+            .build();
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        // idle connections are evicted after maxIdleTime whatever the server allows
+        return new AdaptiveKeepAliveStrategy(this.keepAliveInMilliseconds, this.maxIdleTimeInMilliseconds);
+    }
+
+    private SSLContext sslContext() {
+        SSLContext context = SSLContexts.createDefault();
+        SSLSessionContext sessions = context.getClientSessionContext();
+        if (this.tlsSessionCacheSize != null) {
+            sessions.setSessionCacheSize(this.tlsSessionCacheSize);
+        }
+        sessions.setSessionTimeout(this.tlsSessionTimeoutInSeconds);
+        return context;
+    }
+
+    private RequestConfig requestConfig() {
+        return RequestConfig.custom()
+            .setConnectTimeout(this.connectTimeoutInMilliseconds)
+            .setSocketTimeout(this.socketTimeoutInMilliseconds)
+            .setConnectionRequestTimeout(this.connectionRequestTimeoutInMilliseconds)
+            .build();
+    }
+
+    // the route must match the one the client's route planner computes for
+    // requests so the explicit port has to be resolved from the scheme
+    static HttpRoute route(String url) {
+        HttpHost host = URIUtils.extractHost(URI.create(url));
+        if (host == null) {
+            throw new IllegalArgumentException("Invalid url: " + url);
+        }
+
+        int port;
+        try {
+            port = DefaultSchemePortResolver.INSTANCE.resolve(host);
+        } catch (UnsupportedSchemeException e) {
+            throw new IllegalArgumentException("Invalid url: " + url, e);
+        }
+
+        HttpHost target = new HttpHost(host.getHostName(), port, host.getSchemeName());
+        return new HttpRoute(target, null, "https".equalsIgnoreCase(host.getSchemeName()));
+    }
+}
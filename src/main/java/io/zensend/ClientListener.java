@@ -0,0 +1,47 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Receives events for every request made by a {@link Client} or
+ * {@link AsyncClient}. Register listeners in {@link ClientConfig#listeners}.
+ *
+ * Each attempt at a request results in exactly one of onSuccess, onFailure
+ * or onError. Callbacks run on the thread making the request, or the I/O
+ * thread for AsyncClient, and are passed values the client already holds so
+ * no objects are created to report them. Implementations should be fast and
+ * must not throw.
+ */
+public interface ClientListener {
+    /**
+     * The API returned a successful response. responseBytes is -1 if the
+     * response had no content length.
+     */
+    default void onSuccess(Endpoint endpoint, int httpCode, long latencyNanos, long responseBytes) {
+    }
+
+    /**
+     * The API returned an error response.
+     */
+    default void onFailure(Endpoint endpoint, ZenSendException exception, long latencyNanos, long responseBytes) {
+    }
+
+    /**
+     * The request failed without a usable response.
+     */
+    default void onError(Endpoint endpoint, IOException exception, long latencyNanos) {
+    }
+
+    /**
+     * An SMS was accepted for the given number of recipients.
+     */
+    default void onSmsSent(int numbers, int smsParts, BigDecimal costInPence) {
+    }
+
+    /**
+     * A pooled connection to host was leased after waiting waitNanos.
+     */
+    default void onConnectionLeased(String host, long waitNanos) {
+    }
+}
@@ -0,0 +1,161 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Built-in {@link ClientListener} recording request latency per endpoint in
+ * HDR histograms together with counters for failures by failCode, I/O
+ * errors, response sizes, pool wait times and SMS sent.
+ *
+ * Recording is wait free and doesn't allocate so it can stay enabled under
+ * full load. Latencies are recorded in nanoseconds up to a minute; slower
+ * requests are recorded as a minute.
+ */
+public class ClientMetrics implements ClientListener {
+    private static final long LOWEST_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<Endpoint, EndpointMetrics>(Endpoint.class);
+    private final ConcurrentHistogram poolWait = histogram();
+
+    private final LongAdder smsNumbers = new LongAdder();
+    private final LongAdder smsParts = new LongAdder();
+    private final DoubleAdder smsCostInPence = new DoubleAdder();
+
+    public ClientMetrics() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            this.endpoints.put(endpoint, new EndpointMetrics());
+        }
+    }
+
+    public void onSuccess(Endpoint endpoint, int httpCode, long latencyNanos, long responseBytes) {
+        EndpointMetrics metrics = this.endpoints.get(endpoint);
+        metrics.latency.recordValue(clamp(latencyNanos));
+        metrics.successes.increment();
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    public void onFailure(Endpoint endpoint, ZenSendException exception, long latencyNanos, long responseBytes) {
+        EndpointMetrics metrics = this.endpoints.get(endpoint);
+        metrics.latency.recordValue(clamp(latencyNanos));
+        if (exception.failCode != null) {
+            LongAdder counter = metrics.failures.get(exception.failCode);
+            if (counter == null) {
+                counter = metrics.failures.computeIfAbsent(exception.failCode, code -> new LongAdder());
+            }
+            counter.increment();
+        } else if (exception.httpCode >= 0 && exception.httpCode < metrics.httpFailures.length()) {
+            metrics.httpFailures.incrementAndGet(exception.httpCode);
+        }
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    public void onError(Endpoint endpoint, IOException exception, long latencyNanos) {
+        this.endpoints.get(endpoint).errors.increment();
+    }
+
+    public void onSmsSent(int numbers, int smsParts, BigDecimal costInPence) {
+        this.smsNumbers.add(numbers);
+        this.smsParts.add((long) numbers * smsParts);
+        if (costInPence != null) {
+            this.smsCostInPence.add(costInPence.doubleValue());
+        }
+    }
+
+    public void onConnectionLeased(String host, long waitNanos) {
+        this.poolWait.recordValue(clamp(waitNanos));
+    }
+
+    /**
+     * A copy of the latency histogram for the endpoint, in nanoseconds.
+     */
+    public Histogram latency(Endpoint endpoint) {
+        return this.endpoints.get(endpoint).latency.copy();
+    }
+
+    /**
+     * A copy of the histogram of time spent waiting for a pooled
+     * connection, in nanoseconds.
+     */
+    public Histogram poolWait() {
+        return this.poolWait.copy();
+    }
+
+    public long successCount(Endpoint endpoint) {
+        return this.endpoints.get(endpoint).successes.sum();
+    }
+
+    public long errorCount(Endpoint endpoint) {
+        return this.endpoints.get(endpoint).errors.sum();
+    }
+
+    /**
+     * Failure counts keyed by failCode, or HTTP_[code] for failures without one.
+     */
+    public Map<String, Long> failureCounts(Endpoint endpoint) {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : this.endpoints.get(endpoint).failures.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        AtomicLongArray httpFailures = this.endpoints.get(endpoint).httpFailures;
+        for (int httpCode = 0; httpCode < httpFailures.length(); httpCode++) {
+            long count = httpFailures.get(httpCode);
+            if (count > 0) {
+                counts.put("HTTP_" + httpCode, count);
+            }
+        }
+        return counts;
+    }
+
+    public long responseBytes(Endpoint endpoint) {
+        return this.endpoints.get(endpoint).responseBytes.sum();
+    }
+
+    public long smsNumbers() {
+        return this.smsNumbers.sum();
+    }
+
+    public long smsParts() {
+        return this.smsParts.sum();
+    }
+
+    public double smsCostInPence() {
+        return this.smsCostInPence.sum();
+    }
+
+    private static long clamp(long nanos) {
+        return Math.max(LOWEST_NANOS, Math.min(HIGHEST_NANOS, nanos));
+    }
+
+    private static ConcurrentHistogram histogram() {
+        return new ConcurrentHistogram(LOWEST_NANOS, HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+    }
+
+    private static class EndpointMetrics {
+        final ConcurrentHistogram latency = histogram();
+        final LongAdder successes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<String, LongAdder>();
+        // failures without a failCode, such as non JSON responses, by http code
+        final AtomicLongArray httpFailures = new AtomicLongArray(600);
+    }
+}
@@ -0,0 +1,23 @@
+package io.zensend;
+
+/**
+ * The API operations a client can call, used to configure per endpoint
+ * behaviour such as rate limits.
+ */
+public enum Endpoint {
+    SEND_SMS("/v3/sendsms", false),
+    OPERATOR_LOOKUP("/v3/operator_lookup", true),
+    PRICES("/v3/prices", true),
+    CHECK_BALANCE("/v3/checkbalance", true),
+    CREATE_MSISDN_VERIFICATION("/api/msisdn_verify", false),
+    MSISDN_VERIFICATION_STATUS("/api/msisdn_verify", true);
+
+    public final String path;
+    // whether repeating the request can't cause a second send or charge
+    public final boolean idempotent;
+
+    private Endpoint(String path, boolean idempotent) {
+        this.path = path;
+        this.idempotent = idempotent;
+    }
+}
@@ -0,0 +1,262 @@
+package io.zensend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * application/x-www-form-urlencoded request body which percent-encodes its
+ * fields straight into the output stream.
+ *
+ * Unlike building a Form and a UrlEncodedFormEntity it doesn't create the
+ * joined, encoded and byte array copies of each value, and the content
+ * length is worked out up front from the field values. Multi-valued fields
+ * such as NUMBERS are written comma separated without joining them first,
+ * and an {@link MsisdnList} is written digit by digit from its longs.
+ * The output is byte for byte the same as UrlEncodedFormEntity with UTF-8.
+ */
+final class FormEntity extends AbstractHttpEntity {
+    private static final String CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    // the largest encoding of a single character: 4 UTF-8 bytes as %XX each
+    private static final int MAX_ENCODED_CHAR = 12;
+    // an encoded comma followed by an MSISDN
+    private static final int MAX_ENCODED_MSISDN = 3 + MsisdnList.MAX_DIGITS;
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
+
+    private String[] names = new String[8];
+    private Object[] values = new Object[8];
+    private int size;
+    private long contentLength = -1;
+
+    FormEntity() {
+        setContentType(CONTENT_TYPE);
+    }
+
+    FormEntity add(String name, String value) {
+        return addField(name, value);
+    }
+
+    /**
+     * Adds a field whose value is the given values separated by commas.
+     */
+    FormEntity add(String name, String[] values) {
+        return addField(name, values);
+    }
+
+    /**
+     * Adds a field whose value is the numbers separated by commas.
+     */
+    FormEntity add(String name, MsisdnList numbers) {
+        return addField(name, numbers);
+    }
+
+    private FormEntity addField(String name, Object value) {
+        if (this.size == this.names.length) {
+            String[] names = new String[this.size * 2];
+            Object[] values = new Object[this.size * 2];
+            System.arraycopy(this.names, 0, names, 0, this.size);
+            System.arraycopy(this.values, 0, values, 0, this.size);
+            this.names = names;
+            this.values = values;
+        }
+        this.names[this.size] = name;
+        this.values[this.size] = value;
+        this.size++;
+        this.contentLength = -1;
+        return this;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    public long getContentLength() {
+        if (this.contentLength < 0) {
+            long length = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (i > 0) {
+                    length++;
+                }
+                length += encodedLength(this.names[i]);
+                Object value = this.values[i];
+                if (value instanceof String) {
+                    length += 1 + encodedLength((String) value);
+                } else if (value instanceof String[]) {
+                    String[] values = (String[]) value;
+                    length++;
+                    for (int j = 0; j < values.length; j++) {
+                        if (j > 0) {
+                            length += 3;
+                        }
+                        length += encodedLength(values[j]);
+                    }
+                } else if (value instanceof MsisdnList) {
+                    MsisdnList numbers = (MsisdnList) value;
+                    length++;
+                    for (int j = 0; j < numbers.size(); j++) {
+                        if (j > 0) {
+                            length += 3;
+                        }
+                        length += MsisdnList.digits(numbers.get(j));
+                    }
+                }
+            }
+            this.contentLength = length;
+        }
+        return this.contentLength;
+    }
+
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) getContentLength());
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = BUFFER.get();
+        int position = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                position = ensureCapacity(out, buffer, position);
+                buffer[position++] = '&';
+            }
+            position = encode(this.names[i], out, buffer, position);
+
+            Object value = this.values[i];
+            if (value instanceof String) {
+                position = ensureCapacity(out, buffer, position);
+                buffer[position++] = '=';
+                position = encode((String) value, out, buffer, position);
+            } else if (value instanceof String[]) {
+                String[] values = (String[]) value;
+                position = ensureCapacity(out, buffer, position);
+                buffer[position++] = '=';
+                for (int j = 0; j < values.length; j++) {
+                    if (j > 0) {
+                        position = ensureCapacity(out, buffer, position);
+                        position = percent(buffer, position, ',');
+                    }
+                    position = encode(values[j], out, buffer, position);
+                }
+            } else if (value instanceof MsisdnList) {
+                MsisdnList numbers = (MsisdnList) value;
+                position = ensureCapacity(out, buffer, position);
+                buffer[position++] = '=';
+                for (int j = 0; j < numbers.size(); j++) {
+                    if (position > buffer.length - MAX_ENCODED_MSISDN) {
+                        out.write(buffer, 0, position);
+                        position = 0;
+                    }
+                    if (j > 0) {
+                        position = percent(buffer, position, ',');
+                    }
+                    position = digits(buffer, position, numbers.get(j));
+                }
+            }
+        }
+
+        out.write(buffer, 0, position);
+        out.flush();
+    }
+
+    private static int ensureCapacity(OutputStream out, byte[] buffer, int position) throws IOException {
+        if (position > buffer.length - MAX_ENCODED_CHAR) {
+            out.write(buffer, 0, position);
+            return 0;
+        }
+        return position;
+    }
+
+    private static int encode(String value, OutputStream out, byte[] buffer, int position) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            position = ensureCapacity(out, buffer, position);
+            char c = value.charAt(i);
+            if (isSafe(c)) {
+                buffer[position++] = (byte) c;
+            } else if (c == ' ') {
+                buffer[position++] = '+';
+            } else if (c < 0x80) {
+                position = percent(buffer, position, c);
+            } else if (c < 0x800) {
+                position = percent(buffer, position, 0xc0 | (c >> 6));
+                position = percent(buffer, position, 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                position = percent(buffer, position, 0xf0 | (codePoint >> 18));
+                position = percent(buffer, position, 0x80 | ((codePoint >> 12) & 0x3f));
+                position = percent(buffer, position, 0x80 | ((codePoint >> 6) & 0x3f));
+                position = percent(buffer, position, 0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates can't be encoded and are replaced like the UTF-8 encoder does
+                position = percent(buffer, position, '?');
+            } else {
+                position = percent(buffer, position, 0xe0 | (c >> 12));
+                position = percent(buffer, position, 0x80 | ((c >> 6) & 0x3f));
+                position = percent(buffer, position, 0x80 | (c & 0x3f));
+            }
+        }
+        return position;
+    }
+
+    private static long encodedLength(String value) {
+        long length = 0;
+        int size = value.length();
+        for (int i = 0; i < size; i++) {
+            char c = value.charAt(i);
+            if (isSafe(c) || c == ' ') {
+                length += 1;
+            } else if (c < 0x80) {
+                length += 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 3;
+            } else {
+                length += 9;
+            }
+        }
+        return length;
+    }
+
+    private static int digits(byte[] buffer, int position, long number) {
+        int end = position + MsisdnList.digits(number);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        return end;
+    }
+
+    private static int percent(byte[] buffer, int position, int b) {
+        buffer[position++] = '%';
+        buffer[position++] = HEX[(b >> 4) & 0xf];
+        buffer[position++] = HEX[b & 0xf];
+        return position;
+    }
+
+    // the characters URLEncodedUtils leaves alone in form values
+    private static boolean isSafe(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || c == '-' || c == '_' || c == '.' || c == '*';
+    }
+}
@@ -0,0 +1,65 @@
+package io.zensend;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport which answers requests in process without any network, for
+ * tests and load tests of code built on {@link Client}.
+ *
+ * Each endpoint is given a canned JSON response or a {@link Handler};
+ * requests to other endpoints get a 404.
+ */
+public class InMemoryTransport implements Transport {
+    public static interface Handler {
+        Response handle(Request request) throws IOException;
+    }
+
+    private final Map<Endpoint, Handler> handlers = new ConcurrentHashMap<Endpoint, Handler>();
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Responds to every request to the endpoint with the given status and
+     * JSON body.
+     */
+    public InMemoryTransport respond(Endpoint endpoint, final int status, String json) {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        return handle(endpoint, new Handler() {
+            public Response handle(Request request) {
+                return response(status, body);
+            }
+        });
+    }
+
+    public InMemoryTransport handle(Endpoint endpoint, Handler handler) {
+        this.handlers.put(endpoint, handler);
+        return this;
+    }
+
+    /**
+     * The number of requests executed.
+     */
+    public long requestCount() {
+        return this.requests.get();
+    }
+
+    public Response execute(Request request) throws IOException {
+        this.requests.incrementAndGet();
+        Handler handler = this.handlers.get(request.endpoint);
+        if (handler == null) {
+            return new Response(404, "text/plain", 0, new ByteArrayInputStream(new byte[0]));
+        }
+        return handler.handle(request);
+    }
+
+    public void close() {
+    }
+
+    public static Response response(int status, byte[] json) {
+        return new Response(status, "application/json", json.length, new ByteArrayInputStream(json));
+    }
+}
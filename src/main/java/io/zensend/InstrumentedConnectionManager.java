@@ -0,0 +1,70 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Reports how long each connection lease waited for the pool.
+ */
+class InstrumentedConnectionManager implements HttpClientConnectionManager {
+    private final HttpClientConnectionManager delegate;
+    private final Listeners listeners;
+
+    InstrumentedConnectionManager(HttpClientConnectionManager delegate, Listeners listeners) {
+        this.delegate = delegate;
+        this.listeners = listeners;
+    }
+
+    public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+        final ConnectionRequest request = this.delegate.requestConnection(route, state);
+        return new ConnectionRequest() {
+            public boolean cancel() {
+                return request.cancel();
+            }
+
+            public HttpClientConnection get(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                HttpClientConnection connection = request.get(timeout, tunit);
+                listeners.connectionLeased(route.getTargetHost().getHostName(), System.nanoTime() - start);
+                return connection;
+            }
+        };
+    }
+
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+        this.delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+    }
+
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+        this.delegate.connect(conn, route, connectTimeout, context);
+    }
+
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        this.delegate.upgrade(conn, route, context);
+    }
+
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        this.delegate.routeComplete(conn, route, context);
+    }
+
+    public void closeIdleConnections(long idletime, TimeUnit tunit) {
+        this.delegate.closeIdleConnections(idletime, tunit);
+    }
+
+    public void closeExpiredConnections() {
+        this.delegate.closeExpiredConnections();
+    }
+
+    public void shutdown() {
+        this.delegate.shutdown();
+    }
+}
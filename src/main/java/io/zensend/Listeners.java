@@ -0,0 +1,58 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Dispatches events to a fixed set of {@link ClientListener}s.
+ */
+final class Listeners {
+    static final Listeners NONE = new Listeners(new ClientListener[0]);
+
+    private final ClientListener[] listeners;
+
+    private Listeners(ClientListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    static Listeners of(List<ClientListener> listeners) {
+        if (listeners.isEmpty()) {
+            return NONE;
+        }
+        return new Listeners(listeners.toArray(new ClientListener[listeners.size()]));
+    }
+
+    boolean isEmpty() {
+        return this.listeners.length == 0;
+    }
+
+    void success(Endpoint endpoint, int httpCode, long latencyNanos, long responseBytes, Object result) {
+        for (ClientListener listener : this.listeners) {
+            listener.onSuccess(endpoint, httpCode, latencyNanos, responseBytes);
+        }
+        if (result instanceof SmsResult) {
+            SmsResult smsResult = (SmsResult) result;
+            for (ClientListener listener : this.listeners) {
+                listener.onSmsSent(smsResult.numbers, smsResult.smsParts, smsResult.costInPence);
+            }
+        }
+    }
+
+    void failure(Endpoint endpoint, ZenSendException exception, long latencyNanos, long responseBytes) {
+        for (ClientListener listener : this.listeners) {
+            listener.onFailure(endpoint, exception, latencyNanos, responseBytes);
+        }
+    }
+
+    void error(Endpoint endpoint, IOException exception, long latencyNanos) {
+        for (ClientListener listener : this.listeners) {
+            listener.onError(endpoint, exception, latencyNanos);
+        }
+    }
+
+    void connectionLeased(String host, long waitNanos) {
+        for (ClientListener listener : this.listeners) {
+            listener.onConnectionLeased(host, waitNanos);
+        }
+    }
+}
@@ -14,6 +14,8 @@ public class Message {
     public String originator;
     public String body;
     public String[] numbers;
+    // validated and de-duplicated numbers, used instead of numbers when set
+    public MsisdnList msisdns;
     public OriginatorType originatorType;
     public Integer timeToLiveInMinutes;
     public SmsEncoding smsEncoding;
@@ -0,0 +1,233 @@
+package io.zensend;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * A list of distinct, validated MSISDNs for {@link Message#msisdns}.
+ *
+ * Numbers are normalised to E.164 digits as they're added: spaces, dashes,
+ * dots and brackets are dropped along with a leading + or 00 and a trunk
+ * prefix written as (0) after the country code, and what's left must be 7 to
+ * 15 digits not starting with 0. Each number is stored as a long
+ * and duplicates are skipped using an open addressing hash set of longs, so a
+ * list of a million numbers takes around 24MB rather than the 60MB or so of
+ * a String array. The request body is written from the longs directly.
+ *
+ * Not thread safe.
+ */
+public final class MsisdnList {
+    static final int MIN_DIGITS = 7;
+    static final int MAX_DIGITS = 15;
+
+    private static final long MIN = 1000000L;
+    private static final long MAX = 999999999999999L;
+
+    private long[] numbers;
+    private int size;
+
+    // 0 marks an empty slot, it's never a valid MSISDN
+    private long[] table;
+    private int shift;
+
+    public MsisdnList() {
+        this(16);
+    }
+
+    public MsisdnList(int expectedSize) {
+        this.numbers = new long[Math.max(expectedSize, 1)];
+        // keep the table at most half full
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        this.table = new long[capacity];
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    public static MsisdnList of(String... numbers) {
+        MsisdnList list = new MsisdnList(numbers.length);
+        for (String number : numbers) {
+            list.add(number);
+        }
+        return list;
+    }
+
+    @JsonCreator
+    public static MsisdnList of(long... numbers) {
+        MsisdnList list = new MsisdnList(numbers.length);
+        for (long number : numbers) {
+            list.add(number);
+        }
+        return list;
+    }
+
+    /**
+     * Normalises and adds the number. Returns false if it's already in the
+     * list.
+     *
+     * @throws IllegalArgumentException if the number isn't a valid MSISDN
+     */
+    public boolean add(String number) {
+        return add(parse(number));
+    }
+
+    /**
+     * Adds an MSISDN given as its E.164 digits. Returns false if it's already
+     * in the list.
+     *
+     * @throws IllegalArgumentException if the number isn't a valid MSISDN
+     */
+    public boolean add(long msisdn) {
+        if (msisdn < MIN || msisdn > MAX) {
+            throw new IllegalArgumentException("Invalid MSISDN: " + msisdn);
+        }
+
+        int mask = this.table.length - 1;
+        int slot = slot(msisdn);
+        while (this.table[slot] != 0) {
+            if (this.table[slot] == msisdn) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.table[slot] = msisdn;
+
+        if (this.size == this.numbers.length) {
+            this.numbers = Arrays.copyOf(this.numbers, this.size * 2);
+        }
+        this.numbers[this.size++] = msisdn;
+
+        if (this.size * 2 > this.table.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains(long msisdn) {
+        if (msisdn < MIN || msisdn > MAX) {
+            return false;
+        }
+        int mask = this.table.length - 1;
+        for (int slot = slot(msisdn); this.table[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.table[slot] == msisdn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * The MSISDN at the index, in the order they were added.
+     */
+    public long get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+        }
+        return this.numbers[index];
+    }
+
+    @JsonValue
+    public long[] toArray() {
+        return Arrays.copyOf(this.numbers, this.size);
+    }
+
+    public String[] toStrings() {
+        String[] strings = new String[this.size];
+        for (int i = 0; i < this.size; i++) {
+            strings[i] = Long.toString(this.numbers[i]);
+        }
+        return strings;
+    }
+
+    /**
+     * Normalises the number to its E.164 digits.
+     *
+     * @throws IllegalArgumentException if the number isn't a valid MSISDN
+     */
+    public static long parse(String number) {
+        long msisdn = normalise(number);
+        if (msisdn < 0) {
+            throw new IllegalArgumentException("Invalid MSISDN: " + number);
+        }
+        return msisdn;
+    }
+
+    public static boolean isValid(String number) {
+        return normalise(number) >= 0;
+    }
+
+    // returns -1 rather than throwing so isValid doesn't pay for an exception
+    static long normalise(String number) {
+        if (number == null) {
+            return -1;
+        }
+
+        int length = number.length();
+        int i = 0;
+        while (i < length && number.charAt(i) == ' ') {
+            i++;
+        }
+        if (i < length && number.charAt(i) == '+') {
+            i++;
+        } else if (i + 1 < length && number.charAt(i) == '0' && number.charAt(i + 1) == '0') {
+            i += 2;
+        }
+
+        long msisdn = 0;
+        int digits = 0;
+        for (; i < length; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 0 && c == '0') {
+                    return -1;
+                }
+                if (++digits > MAX_DIGITS) {
+                    return -1;
+                }
+                msisdn = msisdn * 10 + (c - '0');
+            } else if (c == '(' && digits > 0 && number.startsWith("0)", i + 1)) {
+                // a national trunk prefix written after the country code, as
+                // in +44 (0)7700 900123, isn't dialled internationally
+                i += 2;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return -1;
+            }
+        }
+        return digits < MIN_DIGITS ? -1 : msisdn;
+    }
+
+    static int digits(long msisdn) {
+        int digits = 1;
+        while (msisdn >= 10) {
+            msisdn /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private int slot(long msisdn) {
+        // fibonacci hashing spreads the mostly sequential numbers over the table
+        return (int) ((msisdn * 0x9E3779B97F4A7C15L) >>> this.shift);
+    }
+
+    private void rehash() {
+        this.table = new long[this.table.length * 2];
+        this.shift--;
+        int mask = this.table.length - 1;
+        for (int i = 0; i < this.size; i++) {
+            int slot = slot(this.numbers[i]);
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.table[slot] = this.numbers[i];
+        }
+    }
+}
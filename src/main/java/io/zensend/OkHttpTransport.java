@@ -0,0 +1,169 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ * Transport backed by OkHttp, which multiplexes concurrent requests to a host
+ * over a single HTTP/2 connection when the server negotiates h2 and uses
+ * HTTP/1.1 otherwise.
+ *
+ * At most maxConcurrentStreams requests are in flight to each host; further
+ * callers wait for a stream rather than making OkHttp open another
+ * connection.
+ *
+ * OkHttp is an optional dependency and has to be added to use this class.
+ */
+public class OkHttpTransport implements Transport {
+    private final OkHttpClient client;
+    private final int maxConcurrentStreams;
+    private final Map<String, Semaphore> streams = new ConcurrentHashMap<String, Semaphore>();
+
+    public OkHttpTransport() {
+        this(new OkHttpClient());
+    }
+
+    public OkHttpTransport(OkHttpClient client) {
+        this(client, 0);
+    }
+
+    /**
+     * maxConcurrentStreams of 0 leaves the number of requests in flight to
+     * OkHttp and the server.
+     */
+    public OkHttpTransport(OkHttpClient client, int maxConcurrentStreams) {
+        this.client = client;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    OkHttpTransport(ClientConfig config) {
+        this(new OkHttpClient.Builder()
+            .protocols(Arrays.asList(okhttp3.Protocol.HTTP_2, okhttp3.Protocol.HTTP_1_1))
+            .connectionPool(new ConnectionPool(config.http2MaxIdleConnections, config.maxIdleTimeInMilliseconds, TimeUnit.MILLISECONDS))
+            .connectTimeout(config.connectTimeoutInMilliseconds, TimeUnit.MILLISECONDS)
+            .readTimeout(config.socketTimeoutInMilliseconds, TimeUnit.MILLISECONDS)
+            .writeTimeout(config.socketTimeoutInMilliseconds, TimeUnit.MILLISECONDS)
+            // the retry policy replaces OkHttp's own retries
+            .retryOnConnectionFailure(config.retryPolicy == null)
+            .build(), config.http2MaxConcurrentStreams);
+    }
+
+    public Response execute(final Request request) throws IOException {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.url);
+        for (Map.Entry<String, String> header : request.headers.entrySet()) {
+            builder.addHeader(header.getKey(), header.getValue());
+        }
+        if (request.hasBody()) {
+            builder.method(request.method, new RequestBody() {
+                public MediaType contentType() {
+                    return MediaType.get(request.contentType());
+                }
+
+                @Override
+                public long contentLength() {
+                    return request.contentLength();
+                }
+
+                public void writeTo(BufferedSink sink) throws IOException {
+                    request.writeBody(sink.outputStream());
+                }
+
+                // stops OkHttp resending a request which may already have
+                // sent an SMS when the connection fails after the body went out
+                @Override
+                public boolean isOneShot() {
+                    return !request.endpoint.idempotent;
+                }
+            });
+        } else {
+            builder.method(request.method, null);
+        }
+        okhttp3.Request okRequest = builder.build();
+
+        final Semaphore stream = acquire(okRequest.url());
+        final okhttp3.Response response;
+        try {
+            response = this.client.newCall(okRequest).execute();
+        } catch (IOException e) {
+            release(stream);
+            throw e;
+        } catch (RuntimeException e) {
+            release(stream);
+            throw e;
+        }
+
+        // the stream stays open until the body has been read
+        final AtomicBoolean closed = new AtomicBoolean();
+        ResponseBody body = response.body();
+        return new Response(response.code(), response.header("Content-Type"), body.contentLength(), body.byteStream()) {
+            @Override
+            public void close() {
+                if (closed.compareAndSet(false, true)) {
+                    response.close();
+                    release(stream);
+                }
+            }
+        };
+    }
+
+    /**
+     * Makes a HEAD request to the url so a connection to its host is open and
+     * returns the protocol it negotiated.
+     */
+    @Override
+    public String warmUp(String url) throws IOException {
+        okhttp3.Response response = this.client.newCall(new okhttp3.Request.Builder().url(url).head().build()).execute();
+        try {
+            return response.protocol().toString();
+        } finally {
+            response.close();
+        }
+    }
+
+    public void close() {
+        this.client.dispatcher().executorService().shutdown();
+        this.client.connectionPool().evictAll();
+    }
+
+    private Semaphore acquire(HttpUrl url) throws IOException {
+        if (this.maxConcurrentStreams <= 0) {
+            return null;
+        }
+        String host = url.host() + ":" + url.port();
+        Semaphore stream = this.streams.get(host);
+        if (stream == null) {
+            Semaphore created = new Semaphore(this.maxConcurrentStreams);
+            stream = this.streams.putIfAbsent(host, created);
+            if (stream == null) {
+                stream = created;
+            }
+        }
+        try {
+            stream.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return stream;
+    }
+
+    private static void release(Semaphore stream) {
+        if (stream != null) {
+            stream.release();
+        }
+    }
+}
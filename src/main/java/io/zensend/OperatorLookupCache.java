@@ -0,0 +1,367 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the results of {@link Client#lookupOperator(String)} so repeated
+ * lookups of the same number don't cost another HLR hit.
+ *
+ * Entries expire after ttlInMilliseconds and the least recently used entries
+ * are evicted once maxEntries is reached. Concurrent lookups of a number that
+ * isn't cached yet share a single request.
+ *
+ * Cached numbers are held as primitive longs in arrays rather than as map
+ * entries, and results for the same operator share one instance, so millions
+ * of entries can be held cheaply. Numbers which aren't plain international
+ * MSISDNs are passed straight to the client.
+ *
+ * Results served from the cache have a costInPence of zero and no
+ * newBalanceInPence since no request was made for them.
+ */
+public class OperatorLookupCache {
+    private static final int SEGMENTS = 16;
+
+    private final Client client;
+    private final long ttlInMilliseconds;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final ConcurrentMap<Long, CompletableFuture<OperatorLookupResult>> inFlight =
+        new ConcurrentHashMap<Long, CompletableFuture<OperatorLookupResult>>();
+    private final ConcurrentMap<String, OperatorLookupResult> operators =
+        new ConcurrentHashMap<String, OperatorLookupResult>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public OperatorLookupCache(Client client, int maxEntries, long ttlInMilliseconds) {
+        if (maxEntries < SEGMENTS) {
+            throw new IllegalArgumentException("maxEntries must be at least " + SEGMENTS);
+        }
+        this.client = client;
+        this.ttlInMilliseconds = ttlInMilliseconds;
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(maxEntries / SEGMENTS);
+        }
+    }
+
+    public OperatorLookupResult lookupOperator(String number) throws ZenSendException, IOException {
+        long key = key(number);
+        if (key < 0) {
+            return this.client.lookupOperator(number);
+        }
+
+        Segment segment = segment(key);
+        OperatorLookupResult cached = segment.get(key, System.currentTimeMillis());
+        if (cached != null) {
+            this.hits.increment();
+            return copy(cached);
+        }
+        this.misses.increment();
+
+        CompletableFuture<OperatorLookupResult> loading = new CompletableFuture<OperatorLookupResult>();
+        CompletableFuture<OperatorLookupResult> existing = this.inFlight.putIfAbsent(key, loading);
+        if (existing != null) {
+            return copy(Futures.await(existing));
+        }
+
+        try {
+            OperatorLookupResult result = this.client.lookupOperator(number);
+            segment.put(key, canonical(result), System.currentTimeMillis() + this.ttlInMilliseconds);
+            loading.complete(result);
+            return result;
+        } catch (ZenSendException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } catch (IOException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, loading);
+        }
+    }
+
+    public void invalidate(String number) {
+        long key = key(number);
+        if (key >= 0) {
+            segment(key).remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return this.hits.sum();
+    }
+
+    public long missCount() {
+        return this.misses.sum();
+    }
+
+    private Segment segment(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return this.segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    // returns -1 for numbers that can't be represented as a long without
+    // losing information (non digits, leading zeros or too long)
+    static long key(String number) {
+        int start = number.startsWith("+") ? 1 : 0;
+        int length = number.length() - start;
+        if (length < 1 || length > 18 || number.charAt(start) == '0') {
+            return -1;
+        }
+
+        long key = 0;
+        for (int i = start; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    private OperatorLookupResult canonical(OperatorLookupResult result) {
+        String id = result.mcc + '/' + result.mnc + '/' + result.operator;
+        OperatorLookupResult canonical = this.operators.get(id);
+        if (canonical == null) {
+            canonical = new OperatorLookupResult();
+            canonical.mcc = result.mcc;
+            canonical.mnc = result.mnc;
+            canonical.operator = result.operator;
+            OperatorLookupResult existing = this.operators.putIfAbsent(id, canonical);
+            if (existing != null) {
+                canonical = existing;
+            }
+        }
+        return canonical;
+    }
+
+    private static OperatorLookupResult copy(OperatorLookupResult result) {
+        OperatorLookupResult copy = new OperatorLookupResult();
+        copy.mcc = result.mcc;
+        copy.mnc = result.mnc;
+        copy.operator = result.operator;
+        copy.costInPence = BigDecimal.ZERO;
+        return copy;
+    }
+
+    // an access ordered map from long keys to results. Entries live in
+    // parallel arrays linked into a most to least recently used list, and an
+    // open addressing table maps keys to their slots, so no objects are
+    // allocated per entry. The arrays grow as needed up to maxEntries.
+    static class Segment {
+        private static final int NONE = -1;
+
+        private final int maxEntries;
+
+        private long[] keys;
+        private OperatorLookupResult[] results;
+        private long[] expiresAt;
+        private int[] prev;
+        private int[] next;
+
+        // slot + 1 for each key, 0 for empty. Kept at most half full
+        private int[] table;
+        private int mask;
+
+        private int head = NONE;
+        private int tail = NONE;
+        private int free;
+        private int size;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            allocate(Math.min(maxEntries, 16));
+        }
+
+        synchronized OperatorLookupResult get(long key, long now) {
+            int index = indexOf(key);
+            if (this.table[index] == 0) {
+                return null;
+            }
+            int slot = this.table[index] - 1;
+            if (this.expiresAt[slot] <= now) {
+                removeAt(index);
+                return null;
+            }
+            unlink(slot);
+            linkFirst(slot);
+            return this.results[slot];
+        }
+
+        synchronized void put(long key, OperatorLookupResult result, long expiresAt) {
+            int index = indexOf(key);
+            if (this.table[index] != 0) {
+                int slot = this.table[index] - 1;
+                this.results[slot] = result;
+                this.expiresAt[slot] = expiresAt;
+                unlink(slot);
+                linkFirst(slot);
+                return;
+            }
+
+            if (this.size == this.keys.length) {
+                if (this.size < this.maxEntries) {
+                    allocate(Math.min(this.maxEntries, this.size * 2));
+                } else {
+                    removeAt(indexOf(this.keys[this.tail]));
+                }
+                // removing or rehashing moves keys around the table
+                index = indexOf(key);
+            }
+
+            int slot = this.free;
+            this.free = this.next[slot];
+            this.keys[slot] = key;
+            this.results[slot] = result;
+            this.expiresAt[slot] = expiresAt;
+            this.table[index] = slot + 1;
+            linkFirst(slot);
+            this.size++;
+        }
+
+        synchronized void remove(long key) {
+            int index = indexOf(key);
+            if (this.table[index] != 0) {
+                removeAt(index);
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(this.table, 0);
+            Arrays.fill(this.results, null);
+            this.head = NONE;
+            this.tail = NONE;
+            this.size = 0;
+            this.free = NONE;
+            freeSlots(0, this.keys.length);
+        }
+
+        synchronized int size() {
+            return this.size;
+        }
+
+        // the table index holding the key, or the empty index where it belongs
+        private int indexOf(long key) {
+            int index = home(key);
+            while (this.table[index] != 0 && this.keys[this.table[index] - 1] != key) {
+                index = (index + 1) & this.mask;
+            }
+            return index;
+        }
+
+        // the segment is picked by the top bits of the same hash, so the
+        // table uses bits from the middle of it
+        private int home(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+        }
+
+        private void removeAt(int index) {
+            int slot = this.table[index] - 1;
+
+            // shift back any later entries in the probe run that would no
+            // longer be reachable across the gap
+            int gap = index;
+            int i = index;
+            while (true) {
+                i = (i + 1) & this.mask;
+                if (this.table[i] == 0) {
+                    break;
+                }
+                int home = home(this.keys[this.table[i] - 1]);
+                if (((i - home) & this.mask) >= ((i - gap) & this.mask)) {
+                    this.table[gap] = this.table[i];
+                    gap = i;
+                }
+            }
+            this.table[gap] = 0;
+
+            unlink(slot);
+            this.results[slot] = null;
+            this.next[slot] = this.free;
+            this.free = slot;
+            this.size--;
+        }
+
+        private void linkFirst(int slot) {
+            this.prev[slot] = NONE;
+            this.next[slot] = this.head;
+            if (this.head != NONE) {
+                this.prev[this.head] = slot;
+            } else {
+                this.tail = slot;
+            }
+            this.head = slot;
+        }
+
+        private void unlink(int slot) {
+            int before = this.prev[slot];
+            int after = this.next[slot];
+            if (before != NONE) {
+                this.next[before] = after;
+            } else {
+                this.head = after;
+            }
+            if (after != NONE) {
+                this.prev[after] = before;
+            } else {
+                this.tail = before;
+            }
+        }
+
+        private void allocate(int capacity) {
+            int length = this.keys == null ? 0 : this.keys.length;
+            if (length == 0) {
+                this.keys = new long[capacity];
+                this.results = new OperatorLookupResult[capacity];
+                this.expiresAt = new long[capacity];
+                this.prev = new int[capacity];
+                this.next = new int[capacity];
+                this.free = NONE;
+            } else {
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.results = Arrays.copyOf(this.results, capacity);
+                this.expiresAt = Arrays.copyOf(this.expiresAt, capacity);
+                this.prev = Arrays.copyOf(this.prev, capacity);
+                this.next = Arrays.copyOf(this.next, capacity);
+            }
+            freeSlots(length, capacity);
+
+            this.table = new int[Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) * 2];
+            this.mask = this.table.length - 1;
+            for (int slot = this.head; slot != NONE; slot = this.next[slot]) {
+                this.table[indexOf(this.keys[slot])] = slot + 1;
+            }
+        }
+
+        private void freeSlots(int from, int to) {
+            for (int slot = to - 1; slot >= from; slot--) {
+                this.next[slot] = this.free;
+                this.free = slot;
+            }
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package io.zensend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable queue of outgoing messages which are sent in the background and
+ * survive a restart of the process.
+ *
+ * {@link #enqueue} appends the message to a memory-mapped journal and
+ * returns straight away; worker threads send it with {@link Client#sendSms}
+ * and append the outcome. The journal is split into segment files in the
+ * given directory. Segments are deleted oldest first, once every message
+ * enqueued in them and in all older segments has an outcome, as a segment
+ * can hold the outcomes of messages enqueued in an older one.
+ *
+ * When an Outbox is opened on a directory which already has a journal,
+ * messages that were never attempted are sent again. Messages which were
+ * being sent when the process stopped may or may not have been accepted by
+ * ZenSend, so they are not resent but reported to
+ * {@link OutcomeListener#onUncertain}. Each journal entry is therefore sent
+ * at most once.
+ *
+ * Appends are written to the page cache, which survives the JVM crashing;
+ * call {@link #sync} to also force them to disk.
+ */
+public class Outbox implements Closeable {
+    public static interface OutcomeListener {
+        void onSent(long id, Message message, SmsResult result);
+
+        void onFailed(long id, Message message, Exception exception);
+
+        /**
+         * Called when the Outbox is opened for messages which were being sent
+         * when it was last stopped.
+         */
+        default void onUncertain(long id, Message message) {
+        }
+    }
+
+    private static final byte ENQUEUE = 1;
+    private static final byte ATTEMPT = 2;
+    private static final byte SENT = 3;
+    private static final byte FAILED = 4;
+    private static final byte UNCERTAIN = 5;
+
+    // length, type and id before the payload and a CRC32 after it
+    private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+
+    private static final String PREFIX = "outbox-";
+    private static final String SUFFIX = ".log";
+
+    private final Client client;
+    private final Path directory;
+    private final OutcomeListener listener;
+    private final int segmentSize;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final List<Thread> workers = new ArrayList<Thread>();
+    private final CRC32 crc = new CRC32();
+
+    private Segment current;
+    private long nextSegment;
+    private long nextId = 1;
+    private long pending;
+    private volatile boolean closed;
+
+    public Outbox(Client client, Path directory, OutcomeListener listener) throws IOException {
+        this(client, directory, listener, 4, 16 * 1024 * 1024);
+    }
+
+    public Outbox(Client client, Path directory, OutcomeListener listener, int workers, int segmentSize) throws IOException {
+        if (workers < 1 || segmentSize <= RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("workers and segmentSize must be positive");
+        }
+        this.client = client;
+        this.directory = directory;
+        this.listener = listener;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        synchronized (this) {
+            recover();
+        }
+
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "zensend-outbox-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            this.workers.add(worker);
+        }
+    }
+
+    /**
+     * Adds the message to the journal and returns its id. The message must not
+     * be modified afterwards.
+     */
+    public long enqueue(Message message) throws IOException {
+        byte[] payload = Protocol.MESSAGE_WRITER.writeValueAsBytes(message);
+        if (payload.length > this.segmentSize - RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("message is larger than the journal segment size");
+        }
+
+        Entry entry;
+        synchronized (this) {
+            if (this.closed) {
+                throw new IOException("outbox is closed");
+            }
+            long id = this.nextId++;
+            Segment segment = append(ENQUEUE, id, payload);
+            segment.pending++;
+            this.pending++;
+            entry = new Entry(id, message, segment);
+        }
+        this.queue.add(entry);
+        return entry.id;
+    }
+
+    /**
+     * The number of enqueued messages without an outcome yet.
+     */
+    public synchronized long pending() {
+        return this.pending;
+    }
+
+    /**
+     * Forces the journal to disk.
+     */
+    public synchronized void sync() {
+        if (this.current != null) {
+            this.current.buffer.force();
+        }
+    }
+
+    /**
+     * Stops the workers once they finish the messages they're sending.
+     * Messages which haven't been attempted stay in the journal.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        for (Thread worker : this.workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        sync();
+    }
+
+    private void work() {
+        while (!this.closed) {
+            Entry entry;
+            try {
+                entry = this.queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (entry == null) {
+                continue;
+            }
+
+            try {
+                synchronized (this) {
+                    append(ATTEMPT, entry.id, null);
+                }
+            } catch (IOException e) {
+                // not attempted so it will be sent after a restart
+                continue;
+            }
+
+            SmsResult result;
+            try {
+                result = this.client.sendSms(entry.message);
+            } catch (Exception e) {
+                complete(entry, FAILED, String.valueOf(e.getMessage()));
+                notify(entry, null, e);
+                continue;
+            }
+            complete(entry, SENT, result.txGuid);
+            notify(entry, result, null);
+        }
+    }
+
+    private void notify(Entry entry, SmsResult result, Exception exception) {
+        // a listener throwing mustn't stop the worker
+        try {
+            if (exception == null) {
+                this.listener.onSent(entry.id, entry.message, result);
+            } else {
+                this.listener.onFailed(entry.id, entry.message, exception);
+            }
+        } catch (RuntimeException e) {
+        }
+    }
+
+    private synchronized void complete(Entry entry, byte type, String detail) {
+        try {
+            append(type, entry.id, detail == null ? null : detail.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the attempt is in the journal so the message will be reported
+            // as uncertain after a restart
+        }
+        this.pending--;
+        release(entry.segment);
+    }
+
+    private void release(Segment segment) {
+        segment.pending--;
+        prune();
+    }
+
+    // deleting a segment while an older one is live could lose the outcomes
+    // of that older segment's messages, so they're only deleted from the front
+    private void prune() {
+        while (!this.segments.isEmpty()) {
+            Segment oldest = this.segments.get(0);
+            if (oldest == this.current || oldest.pending > 0) {
+                return;
+            }
+            this.segments.remove(0);
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                // left for the next recovery to clean up
+            }
+        }
+    }
+
+    private Segment append(byte type, long id, byte[] payload) throws IOException {
+        int length = payload == null ? 0 : payload.length;
+        if (this.current == null || this.current.buffer.remaining() < RECORD_OVERHEAD + length) {
+            roll(RECORD_OVERHEAD + length);
+        }
+
+        MappedByteBuffer buffer = this.current.buffer;
+        int start = buffer.position();
+        buffer.putInt(length);
+        buffer.put(type);
+        buffer.putLong(id);
+        if (payload != null) {
+            buffer.put(payload);
+        }
+
+        ByteBuffer record = buffer.duplicate();
+        record.position(start + 4);
+        record.limit(buffer.position());
+        this.crc.reset();
+        this.crc.update(record);
+        buffer.putInt((int) this.crc.getValue());
+        return this.current;
+    }
+
+    private void roll(int recordSize) throws IOException {
+        Segment previous = this.current;
+        Path path = this.directory.resolve(PREFIX + this.nextSegment + SUFFIX);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.current = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(this.segmentSize, recordSize)));
+        } finally {
+            channel.close();
+        }
+        this.nextSegment++;
+        this.segments.add(this.current);
+
+        if (previous != null) {
+            previous.buffer.force();
+            prune();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<Path>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, PREFIX + "*" + SUFFIX);
+        try {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(paths, new Comparator<Path>() {
+            public int compare(Path a, Path b) {
+                return Long.compare(segmentNumber(a), segmentNumber(b));
+            }
+        });
+
+        Map<Long, Recovered> entries = new LinkedHashMap<Long, Recovered>();
+        List<Segment> recovered = new ArrayList<Segment>();
+        for (Path path : paths) {
+            this.nextSegment = Math.max(this.nextSegment, segmentNumber(path) + 1);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+            Segment segment = new Segment(path, buffer);
+            recovered.add(segment);
+            read(segment, entries);
+        }
+
+        for (Recovered entry : entries.values()) {
+            entry.segment.pending++;
+        }
+        this.segments.addAll(recovered);
+
+        for (Map.Entry<Long, Recovered> e : entries.entrySet()) {
+            long id = e.getKey();
+            Recovered entry = e.getValue();
+            Message message = Protocol.MESSAGE_READER.readValue(entry.payload);
+            if (entry.attempted) {
+                append(UNCERTAIN, id, null);
+                release(entry.segment);
+                this.listener.onUncertain(id, message);
+            } else {
+                this.pending++;
+                this.queue.add(new Entry(id, message, entry.segment));
+            }
+        }
+
+        // segments with nothing left to send
+        prune();
+    }
+
+    private void read(Segment segment, Map<Long, Recovered> entries) {
+        ByteBuffer buffer = segment.buffer;
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            byte type = buffer.get();
+            if (type == 0 || length < 0 || length > buffer.remaining() - 8 - 4) {
+                // the end of the segment or a record that was only partly written
+                return;
+            }
+            long id = buffer.getLong();
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            ByteBuffer record = buffer.duplicate();
+            record.position(start + 4);
+            record.limit(buffer.position());
+            this.crc.reset();
+            this.crc.update(record);
+            if (buffer.getInt() != (int) this.crc.getValue()) {
+                return;
+            }
+
+            this.nextId = Math.max(this.nextId, id + 1);
+            switch (type) {
+            case ENQUEUE:
+                entries.put(id, new Recovered(segment, payload));
+                break;
+            case ATTEMPT:
+                Recovered entry = entries.get(id);
+                if (entry != null) {
+                    entry.attempted = true;
+                }
+                break;
+            default:
+                entries.remove(id);
+            }
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        // entries enqueued in this segment without an outcome
+        int pending;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Entry {
+        final long id;
+        final Message message;
+        final Segment segment;
+
+        Entry(long id, Message message, Segment segment) {
+            this.id = id;
+            this.message = message;
+            this.segment = segment;
+        }
+    }
+
+    private static class Recovered {
+        final Segment segment;
+        final byte[] payload;
+        boolean attempted;
+
+        Recovered(Segment segment, byte[] payload) {
+            this.segment = segment;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.zensend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local copy of the price table returned by {@link Client#getPrices()} so
+ * prices can be looked up and costs estimated without a request.
+ *
+ * The table is loaded when the PriceBook is created and then refreshed in
+ * the background every refreshIntervalInMilliseconds. A failed refresh keeps
+ * the previous table. Lookups read an immutable snapshot so they never block.
+ */
+public class PriceBook implements Closeable {
+    private final Client client;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Map<String, BigDecimal> pricesInPence;
+    private volatile long lastUpdated;
+    private volatile Exception lastRefreshError;
+
+    public PriceBook(Client client) throws ZenSendException, IOException {
+        this(client, 60 * 60 * 1000);
+    }
+
+    public PriceBook(Client client, long refreshIntervalInMilliseconds) throws ZenSendException, IOException {
+        this.client = client;
+        refresh();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "zensend-price-book");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    lastRefreshError = e;
+                }
+            }
+        }, refreshIntervalInMilliseconds, refreshIntervalInMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reloads the price table immediately.
+     */
+    public void refresh() throws ZenSendException, IOException {
+        HashMap<String, BigDecimal> prices = this.client.getPrices();
+        this.pricesInPence = Collections.unmodifiableMap(new HashMap<String, BigDecimal>(prices));
+        this.lastUpdated = System.currentTimeMillis();
+        this.lastRefreshError = null;
+    }
+
+    /**
+     * The price of one SMS part to the given country, or null if the country
+     * isn't in the price table.
+     */
+    public BigDecimal priceInPence(String countryCode) {
+        return this.pricesInPence.get(countryCode);
+    }
+
+    public Map<String, BigDecimal> pricesInPence() {
+        return this.pricesInPence;
+    }
+
+    /**
+     * Estimates the cost of sending the message to numbers in the given
+     * country: the per part price multiplied by the number of SMS parts, as
+     * worked out by {@link SmsCalculator}, and the number of recipients.
+     * Returns null if the country isn't priced.
+     */
+    public BigDecimal estimateCost(Message message, String countryCode) {
+        BigDecimal price = priceInPence(countryCode);
+        if (price == null) {
+            return null;
+        }
+        int recipients = message.msisdns != null ? message.msisdns.size()
+            : message.numbers == null ? 0 : message.numbers.length;
+        return price.multiply(BigDecimal.valueOf((long) SmsCalculator.countParts(message) * recipients));
+    }
+
+    public long lastUpdated() {
+        return this.lastUpdated;
+    }
+
+    public Exception lastRefreshError() {
+        return this.lastRefreshError;
+    }
+
+    public void close() {
+        this.scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,287 @@
+package io.zensend;
+
+import java.io.Closeable;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Queues sendSms calls in priority lanes so messages someone is waiting for,
+ * such as one time codes, aren't held up behind bulk campaigns.
+ *
+ * At most maxConcurrent messages are sent at once, and bulk messages can
+ * never take the last reservedForTransactional of those. Keep maxConcurrent
+ * within the client's connections per route so a transactional message
+ * always finds a free connection.
+ *
+ * Queued messages are ordered across flows by self-clocked fair queuing, a
+ * form of weighted fair queuing. A flow is a lane plus a caller chosen key
+ * such as a tenant or campaign. Each flow gets a share of the sends in
+ * proportion to its lane's weight times its own weight, so a transactional
+ * flow is served 16 times as often as a backlogged bulk flow of the same
+ * weight, and one large campaign can't starve the others in its lane.
+ *
+ * Queue depth, sends in flight and the time spent queued are kept per lane.
+ */
+public class PriorityDispatcher implements Closeable {
+    public static enum Priority {
+        TRANSACTIONAL(16),
+        BULK(1);
+
+        final int weight;
+
+        private Priority(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final long LOWEST_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HIGHEST_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final Client client;
+    private final int maxConcurrent;
+    private final ExecutorService executor;
+
+    private final Map<Priority, Lane> lanes = new EnumMap<Priority, Lane>(Priority.class);
+    private final Map<String, Double> weights = new ConcurrentHashMap<String, Double>();
+
+    // guarded by this
+    private double virtualTime;
+    private long sequence;
+    private int running;
+    private boolean closed;
+
+    public PriorityDispatcher(Client client) {
+        this(client, 16, 4);
+    }
+
+    public PriorityDispatcher(Client client, int maxConcurrent, int reservedForTransactional) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        if (reservedForTransactional < 0 || reservedForTransactional >= maxConcurrent) {
+            throw new IllegalArgumentException("reservedForTransactional must be at least 0 and less than maxConcurrent");
+        }
+        this.client = client;
+        this.maxConcurrent = maxConcurrent;
+        this.executor = Executors.newFixedThreadPool(maxConcurrent);
+        this.lanes.put(Priority.TRANSACTIONAL, new Lane(maxConcurrent));
+        this.lanes.put(Priority.BULK, new Lane(maxConcurrent - reservedForTransactional));
+    }
+
+    public CompletableFuture<SmsResult> send(Message message, Priority priority) {
+        return send(message, priority, "");
+    }
+
+    /**
+     * Queues the message in the priority's lane under the given flow.
+     * Cancelling the returned future before the message is sent removes it
+     * from the queue.
+     */
+    public CompletableFuture<SmsResult> send(Message message, Priority priority, String flow) {
+        final CompletableFuture<SmsResult> result = new CompletableFuture<SmsResult>();
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("PriorityDispatcher is closed");
+            }
+            final Lane lane = this.lanes.get(priority);
+            Flow state = lane.flows.get(flow);
+            if (state == null) {
+                state = new Flow();
+                lane.flows.put(flow, state);
+            }
+
+            // a message finishes one share of the flow after the previous one,
+            // or after the message being sent if the flow has caught up
+            double finish = Math.max(this.virtualTime, state.lastFinish) + 1.0 / (priority.weight * weight(flow));
+            state.lastFinish = finish;
+            state.queued++;
+            final Task task = new Task(message, flow, finish, this.sequence++, result);
+            lane.queue.add(task);
+            dispatch();
+
+            result.whenComplete((value, ex) -> {
+                if (result.isCancelled()) {
+                    synchronized (this) {
+                        if (lane.queue.remove(task)) {
+                            dequeued(lane, task);
+                            notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Sets the share of a flow relative to the other flows in its lane. Flows
+     * have a weight of 1 unless set; the change applies to messages queued
+     * afterwards.
+     */
+    public void setWeight(String flow, double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        this.weights.put(flow, weight);
+    }
+
+    public synchronized int queueDepth(Priority priority) {
+        return this.lanes.get(priority).queue.size();
+    }
+
+    public synchronized int inFlight(Priority priority) {
+        return this.lanes.get(priority).running;
+    }
+
+    /**
+     * A copy of the histogram of time messages in the lane spent queued, in
+     * nanoseconds.
+     */
+    public Histogram waitTime(Priority priority) {
+        return this.lanes.get(priority).waitTime.copy();
+    }
+
+    /**
+     * Stops accepting messages and waits for the queued ones to be sent. The
+     * underlying client is not closed.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            try {
+                while (this.running > 0 || queued()) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.executor.shutdown();
+    }
+
+    // must be called while holding the lock
+    private void dispatch() {
+        while (this.running < this.maxConcurrent) {
+            Lane next = null;
+            for (Lane lane : this.lanes.values()) {
+                Task head = lane.queue.peek();
+                if (head != null && lane.running < lane.maxRunning
+                        && (next == null || head.compareTo(next.queue.peek()) < 0)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+
+            final Lane lane = next;
+            final Task task = lane.queue.poll();
+            dequeued(lane, task);
+            if (task.result.isDone()) {
+                // completed by the caller while queued
+                continue;
+            }
+
+            this.virtualTime = task.finish;
+            lane.waitTime.recordValue(clamp(System.nanoTime() - task.queuedNanos));
+            lane.running++;
+            this.running++;
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    send(lane, task);
+                }
+            });
+        }
+    }
+
+    // must be called while holding the lock
+    private void dequeued(Lane lane, Task task) {
+        Flow flow = lane.flows.get(task.flow);
+        if (--flow.queued == 0) {
+            lane.flows.remove(task.flow);
+        }
+    }
+
+    private void send(Lane lane, Task task) {
+        try {
+            task.result.complete(this.client.sendSms(task.message));
+        } catch (Exception e) {
+            task.result.completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                lane.running--;
+                this.running--;
+                dispatch();
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean queued() {
+        for (Lane lane : this.lanes.values()) {
+            if (!lane.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double weight(String flow) {
+        Double weight = this.weights.get(flow);
+        return weight == null ? 1 : weight;
+    }
+
+    private static long clamp(long nanos) {
+        return Math.max(LOWEST_NANOS, Math.min(HIGHEST_NANOS, nanos));
+    }
+
+    private static class Lane {
+        final int maxRunning;
+        final PriorityQueue<Task> queue = new PriorityQueue<Task>();
+        // flows with messages queued
+        final Map<String, Flow> flows = new HashMap<String, Flow>();
+        final ConcurrentHistogram waitTime = new ConcurrentHistogram(LOWEST_NANOS, HIGHEST_NANOS, 3);
+        int running;
+
+        Lane(int maxRunning) {
+            this.maxRunning = maxRunning;
+        }
+    }
+
+    private static class Flow {
+        double lastFinish;
+        int queued;
+    }
+
+    private static class Task implements Comparable<Task> {
+        final Message message;
+        final String flow;
+        final double finish;
+        final long sequence;
+        final long queuedNanos = System.nanoTime();
+        final CompletableFuture<SmsResult> result;
+
+        Task(Message message, String flow, double finish, long sequence, CompletableFuture<SmsResult> result) {
+            this.message = message;
+            this.flow = flow;
+            this.finish = finish;
+            this.sequence = sequence;
+            this.result = result;
+        }
+
+        public int compareTo(Task other) {
+            int byFinish = Double.compare(this.finish, other.finish);
+            return byFinish != 0 ? byFinish : Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.apache.http.client.utils.URIBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Builds the HTTP requests for each ZenSend endpoint and parses their
+ * responses. Shared by the blocking {@link Client} and the {@link AsyncClient}.
+ */
+final class Protocol {
+    static final String ZENSEND_URL = "https://api.zensend.io";
+    static final String VERIFY_URL = "https://verify.zensend.io";
+
+    // ObjectMapper and ObjectReader are thread safe once configured so they
+    // are shared by all clients rather than rebuilt for every response
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final ObjectReader SMS_RESULT_READER =
+        MAPPER.readerFor(new TypeReference<Result<SmsResult>>(){});
+    static final ObjectReader OPERATOR_LOOKUP_RESULT_READER =
+        MAPPER.readerFor(new TypeReference<Result<OperatorLookupResult>>(){});
+    static final ObjectReader PRICES_READER =
+        MAPPER.readerFor(new TypeReference<Result<Prices>>(){});
+    static final ObjectReader BALANCE_READER =
+        MAPPER.readerFor(new TypeReference<Result<Balance>>(){});
+    static final ObjectReader CREATE_MSISDN_VERIFICATION_RESULT_READER =
+        MAPPER.readerFor(new TypeReference<Result<CreateMsisdnVerificationResult>>(){});
+    static final ObjectReader MSISDN_VERIFICATION_STATUS_RESULT_READER =
+        MAPPER.readerFor(new TypeReference<Result<MsisdnVerificationStatusResult>>(){});
+    // how messages are stored in the Outbox journal
+    static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+
+    private Protocol() {
+    }
+
+    static Transport.Request createMsisdnVerificationRequest(String verifyUrl, String number, String message, String originator) {
+        FormEntity form = new FormEntity();
+        form.add("NUMBER", number);
+
+
+        if (message != null) {
+            form.add("MESSAGE", message);
+        }
+
+        if (originator != null) {
+            form.add("ORIGINATOR", originator);
+        }
+    
+        return post(Endpoint.CREATE_MSISDN_VERIFICATION, verifyUrl, form);
+    }
+
+    static Transport.Request msisdnVerificationStatusRequest(String verifyUrl, String session) {
+        return get(Endpoint.MSISDN_VERIFICATION_STATUS, verifyUrl, "SESSION", session);
+    }
+
+    static Transport.Request sendSmsRequest(String url, Message message) {
+        // numbers are written comma separated straight into the request body
+        // rather than joined into one string first
+        FormEntity form = new FormEntity().add("BODY", message.body);
+
+        if (message.msisdns != null) {
+            if (message.numbers != null) {
+                throw new IllegalArgumentException("Only one of numbers and msisdns can be set");
+            }
+            form.add("NUMBERS", message.msisdns);
+        } else {
+            assertNoCommas(message.numbers);
+            form.add("NUMBERS", message.numbers);
+        }
+
+        form.add("ORIGINATOR", message.originator);
+                
+        if (message.originatorType != null) {
+            form.add("ORIGINATOR_TYPE", message.originatorType.name().toLowerCase());
+        }
+
+        if (message.timeToLiveInMinutes != null) {
+            form.add("TIMETOLIVE", message.timeToLiveInMinutes.toString());
+        }
+
+        if (message.smsEncoding != null) {
+            form.add("ENCODING", message.smsEncoding.name().toLowerCase());
+        }
+
+        return post(Endpoint.SEND_SMS, url, form);
+    }
+
+    static Transport.Request lookupOperatorRequest(String url, String number) {
+        return get(Endpoint.OPERATOR_LOOKUP, url, "NUMBER", number);
+    }
+
+    static Transport.Request getPricesRequest(String url) {
+        return get(Endpoint.PRICES, url, null, null);
+    }
+
+    static Transport.Request checkBalanceRequest(String url) {
+        return get(Endpoint.CHECK_BALANCE, url, null, null);
+    }
+
+    private static Transport.Request post(Endpoint endpoint, String url, FormEntity form) {
+        return new Transport.Request(endpoint, "POST", url + endpoint.path, Collections.<String, String>emptyMap(), form);
+    }
+
+    private static Transport.Request get(Endpoint endpoint, String url, String param, String value) {
+        if (param == null) {
+            return new Transport.Request(endpoint, "GET", url + endpoint.path, Collections.<String, String>emptyMap(), null);
+        }
+
+        URI uri;
+        
+        try {
+            uri = new URIBuilder(url + endpoint.path).addParameter(param, value).build();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+        
+        return new Transport.Request(endpoint, "GET", uri.toString(), Collections.singletonMap(param, value), null);
+    }
+
+    /**
+     * The message's numbers, whichever way they were given.
+     */
+    static String[] numbers(Message message) {
+        return message.msisdns != null ? message.msisdns.toStrings() : message.numbers;
+    }
+
+    static void assertNoCommas(String[] numbers) {
+        for (String number : numbers) {
+            if (number.contains(",")) {
+                throw new IllegalArgumentException("Comma not allowed in numbers");
+            }
+        }
+    }
+
+    static <T> T parseResponse(Transport.Response response, ObjectReader reader) throws ZenSendException, IOException {
+        if (!"application/json".equals(response.contentType)) {
+            throw new ZenSendException(response.status, null, null, null, null);
+        }
+
+        // the API always responds in UTF-8 so let jackson decode the raw bytes
+        // directly instead of going through an InputStreamReader
+        Result<T> result = reader.readValue(response.body());
+
+        if (result.success == null) {
+            handleError(response.status, result.failure);
+        }
+
+        return result.success;            
+    }
+
+    private static void handleError(int httpCode, ZenSendError error) throws ZenSendException {
+        if (error != null) {
+            throw new ZenSendException(
+                httpCode,
+                error.failCode,
+                error.parameter,
+                error.costInPence,
+                error.newBalanceInPence);
+        } else {
+            throw new ZenSendException(httpCode, null, null, null, null);
+        }
+    }
+
+    // helper classes
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class ZenSendError {
+        @JsonProperty("failcode")
+        public String failCode;
+
+        public String parameter;
+
+        @JsonProperty("cost_in_pence")
+        public BigDecimal costInPence;
+
+        @JsonProperty("new_balance_in_pence")
+        public BigDecimal newBalanceInPence;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class Result<T> {
+        public T success;
+        public ZenSendError failure;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class Balance {
+        public BigDecimal balance;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class Prices {
+        @JsonProperty("prices_in_pence")
+        public HashMap<String, BigDecimal> pricesInPence;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class CreateMsisdnVerificationResult {
+        public String session;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class MsisdnVerificationStatusResult {
+        public String msisdn;
+    }
+}
@@ -0,0 +1,19 @@
+package io.zensend;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link Client} when no permit could be taken from an endpoint's
+ * {@link RateLimiter} within its maxWaitInMilliseconds. The request was not
+ * sent.
+ */
+public class RateLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public final Endpoint endpoint;
+
+    public RateLimitExceededException(Endpoint endpoint) {
+        super("Rate limit exceeded for " + endpoint);
+        this.endpoint = endpoint;
+    }
+}
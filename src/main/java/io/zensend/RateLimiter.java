@@ -0,0 +1,281 @@
+package io.zensend;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate and concurrency of requests to an endpoint. Register one
+ * per endpoint in {@link ClientConfig#rateLimiters}.
+ *
+ * The rate is enforced with a token bucket of burst permits refilled at
+ * permitsPerSecond, tracked as the time the next permit becomes free and
+ * updated with a single compare and set. Concurrency is limited to
+ * maxConcurrent requests in flight. Neither takes a lock.
+ *
+ * When the API responds with 429 or 503 the rate is halved, at most once per
+ * second, down to a sixteenth of the configured rate. It then recovers by 10%
+ * a second while requests succeed.
+ */
+public class RateLimiter {
+    private static final long ADJUSTMENT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "zensend-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // how long Client waits for a permit before failing with RateLimitExceededException
+    public volatile long maxWaitInMilliseconds = Long.MAX_VALUE;
+
+    private final long configuredIntervalNanos;
+    private final long slowestIntervalNanos;
+    private final int burst;
+    private volatile long intervalNanos;
+    // the time at which the bucket would be empty, or in the past if it's full
+    private final AtomicLong nextFree = new AtomicLong(System.nanoTime());
+    private final AtomicLong lastAdjustment = new AtomicLong(System.nanoTime());
+
+    private final int maxConcurrent;
+    private final AtomicInteger available;
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<CompletableFuture<Void>>();
+
+    /**
+     * @param permitsPerSecond the sustained request rate, or 0 for no limit
+     * @param burst the number of requests which may be made at once after a quiet period
+     * @param maxConcurrent the number of requests allowed in flight, or 0 for no limit
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxConcurrent) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.configuredIntervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+        this.slowestIntervalNanos = this.configuredIntervalNanos * 16;
+        this.intervalNanos = this.configuredIntervalNanos;
+        this.burst = burst;
+        this.maxConcurrent = maxConcurrent;
+        this.available = new AtomicInteger(maxConcurrent);
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     */
+    public boolean tryAcquire() {
+        if (!tryAcquireSlot()) {
+            return false;
+        }
+        if (reserve(0) < 0) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits up to the timeout for a permit, returning false if none became
+     * available in time.
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        // the slot is taken first, as in tryAcquire, so a slot wait that times
+        // out doesn't spend a rate permit on a request that's never made
+        CompletableFuture<Void> slot = acquireSlot();
+        try {
+            slot.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandon(slot);
+            return false;
+        } catch (InterruptedException e) {
+            abandon(slot);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long wait = reserve(Math.max(0, deadline - System.nanoTime()));
+        if (wait < 0) {
+            release();
+            return false;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                release();
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a future completed once a permit has been taken. The future is
+     * completed on the thread that released the permit or on the limiter's
+     * timer thread so dependent work shouldn't block.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        long wait = reserve(Long.MAX_VALUE);
+        if (wait == 0) {
+            return acquireSlot();
+        }
+
+        final CompletableFuture<Void> acquired = new CompletableFuture<Void>();
+        SCHEDULER.schedule(new Runnable() {
+            public void run() {
+                if (acquired.isDone()) {
+                    // cancelled while waiting for the rate permit
+                    return;
+                }
+                final CompletableFuture<Void> slot = acquireSlot();
+                slot.whenComplete((value, ex) -> {
+                    // a slot completed exceptionally was abandoned and never taken
+                    if (ex == null && !acquired.complete(null)) {
+                        release();
+                    }
+                });
+                acquired.whenComplete((value, ex) -> {
+                    if (acquired.isCancelled()) {
+                        // if the slot was already handed over it's released above
+                        slot.completeExceptionally(new CancellationException());
+                    }
+                });
+            }
+        }, wait, TimeUnit.NANOSECONDS);
+        return acquired;
+    }
+
+    /**
+     * Returns the concurrency permit taken by one of the acquire methods.
+     */
+    public void release() {
+        if (this.maxConcurrent <= 0) {
+            return;
+        }
+        this.available.incrementAndGet();
+        drain();
+    }
+
+    /**
+     * Slows down after the API has reported that it is throttling requests.
+     */
+    public void onThrottled() {
+        long interval = this.intervalNanos;
+        if (interval == 0 || interval >= this.slowestIntervalNanos || !claimAdjustment()) {
+            return;
+        }
+        this.intervalNanos = Math.min(this.slowestIntervalNanos, interval * 2);
+    }
+
+    /**
+     * Recovers towards the configured rate after a successful request.
+     */
+    public void onSuccess() {
+        long interval = this.intervalNanos;
+        if (interval <= this.configuredIntervalNanos || !claimAdjustment()) {
+            return;
+        }
+        this.intervalNanos = Math.max(this.configuredIntervalNanos, (long) (interval / 1.1));
+    }
+
+    /**
+     * The rate currently being enforced, or 0 if the rate isn't limited.
+     */
+    public double permitsPerSecond() {
+        long interval = this.intervalNanos;
+        return interval == 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / interval;
+    }
+
+    public int inFlight() {
+        return this.maxConcurrent <= 0 ? 0 : this.maxConcurrent - Math.max(0, this.available.get());
+    }
+
+    // takes the next rate permit if it will be free within maxWaitNanos and
+    // returns how long to wait for it, or -1 without taking it otherwise
+    private long reserve(long maxWaitNanos) {
+        long interval = this.intervalNanos;
+        if (interval == 0) {
+            return 0;
+        }
+        long tolerance = interval * (this.burst - 1);
+
+        while (true) {
+            long now = System.nanoTime();
+            long next = this.nextFree.get();
+            long start = next - now > 0 ? next : now;
+            long wait = start - tolerance - now;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (this.nextFree.compareAndSet(next, start + interval)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    private boolean claimAdjustment() {
+        long now = System.nanoTime();
+        long last = this.lastAdjustment.get();
+        return now - last >= ADJUSTMENT_PERIOD_NANOS && this.lastAdjustment.compareAndSet(last, now);
+    }
+
+    private boolean tryAcquireSlot() {
+        if (this.maxConcurrent <= 0) {
+            return true;
+        }
+        while (true) {
+            int current = this.available.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (this.available.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private CompletableFuture<Void> acquireSlot() {
+        if (tryAcquireSlot()) {
+            return ACQUIRED;
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<Void>();
+        this.waiters.add(waiter);
+        // a slot may have been released after the attempt above
+        drain();
+        return waiter;
+    }
+
+    // hands free slots to queued waiters. both acquirers and releasers call
+    // this after changing their state so a waiter can't be missed
+    private void drain() {
+        while (!this.waiters.isEmpty() && tryAcquireSlot()) {
+            CompletableFuture<Void> waiter = this.waiters.poll();
+            if (waiter == null || !waiter.complete(null)) {
+                this.available.incrementAndGet();
+            }
+        }
+    }
+
+    private void abandon(CompletableFuture<Void> slot) {
+        if (!slot.completeExceptionally(new CancellationException())) {
+            // the slot was handed over before we gave up on it
+            release();
+        }
+    }
+}
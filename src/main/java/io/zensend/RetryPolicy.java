@@ -0,0 +1,169 @@
+package io.zensend;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+/**
+ * Decides whether a failed request should be retried and how long to wait
+ * before doing so. Set it on {@link ClientConfig#retryPolicy} to enable
+ * retries; a policy keeps state so use one instance per client.
+ *
+ * Idempotent requests (operator lookup, balance, prices and verification
+ * status) are retried after I/O errors, 429 responses and 5xx responses.
+ * Requests which aren't idempotent (sending SMS and creating verifications)
+ * are only retried when the failure shows the request never reached the
+ * server, such as a refused connection or a pool lease timeout.
+ *
+ * Error responses can also be matched on their failcode. A failcode in
+ * retryableFailCodes marks a failure the API reports before acting on the
+ * request, so it is retried even for sends. A failcode in
+ * nonRetryableFailCodes is never retried, whatever its HTTP status.
+ *
+ * The wait before each retry is picked at random between zero and an
+ * exponentially growing cap. Retries also draw on a budget that every
+ * request tops up by retryBudgetRatio, so an outage can't turn into a
+ * retry storm.
+ */
+public class RetryPolicy {
+    // total attempts including the first one
+    public int maxAttempts = 3;
+    public long initialBackoffInMilliseconds = 100;
+    public long maxBackoffInMilliseconds = 5 * 1000;
+    public double backoffMultiplier = 2.0;
+
+    // retries available up front. every request adds retryBudgetRatio of a
+    // retry back, up to this amount, so in a sustained outage only that
+    // fraction of requests is retried
+    public int retryBudget = 10;
+    public double retryBudgetRatio = 0.1;
+
+    public Set<String> retryableFailCodes = new HashSet<String>();
+    public Set<String> nonRetryableFailCodes = new HashSet<String>();
+
+    // the budget is held in thousandths of a retry so it can be updated atomically
+    private static final long SCALE = 1000;
+    private final AtomicLong budget = new AtomicLong(-1);
+
+    /**
+     * A policy with the same settings and a full budget of its own.
+     */
+    RetryPolicy copy() {
+        RetryPolicy copy = new RetryPolicy();
+        copy.maxAttempts = this.maxAttempts;
+        copy.initialBackoffInMilliseconds = this.initialBackoffInMilliseconds;
+        copy.maxBackoffInMilliseconds = this.maxBackoffInMilliseconds;
+        copy.backoffMultiplier = this.backoffMultiplier;
+        copy.retryBudget = this.retryBudget;
+        copy.retryBudgetRatio = this.retryBudgetRatio;
+        copy.retryableFailCodes = new HashSet<String>(this.retryableFailCodes);
+        copy.nonRetryableFailCodes = new HashSet<String>(this.nonRetryableFailCodes);
+        return copy;
+    }
+
+    void onRequest() {
+        long max = maxBudget();
+        long deposit = (long) (this.retryBudgetRatio * SCALE);
+        long current;
+        long next;
+        do {
+            current = currentBudget();
+            next = Math.min(max, current + deposit);
+        } while (!this.budget.compareAndSet(current, next));
+    }
+
+    boolean shouldRetry(Exception e, boolean idempotent, int attempt) {
+        if (attempt >= this.maxAttempts || !isRetryable(e, idempotent)) {
+            return false;
+        }
+
+        long current;
+        do {
+            current = currentBudget();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!this.budget.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    void backoff(int attempt) throws InterruptedIOException {
+        double cap = Math.min(this.maxBackoffInMilliseconds,
+            this.initialBackoffInMilliseconds * Math.pow(this.backoffMultiplier, attempt - 1));
+        long delay = (long) (ThreadLocalRandom.current().nextDouble() * cap);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    boolean isRetryable(Exception e, boolean idempotent) {
+        if (e instanceof ZenSendException) {
+            ZenSendException failure = (ZenSendException) e;
+            if (failure.failCode != null) {
+                if (this.nonRetryableFailCodes.contains(failure.failCode)) {
+                    return false;
+                }
+                if (this.retryableFailCodes.contains(failure.failCode)) {
+                    return true;
+                }
+            }
+            return idempotent && (failure.httpCode == 429 || failure.httpCode >= 500);
+        }
+
+        if (!(e instanceof IOException) || e instanceof CircuitOpenException) {
+            return false;
+        }
+
+        if (neverSent((IOException) e)) {
+            return true;
+        }
+
+        if (e instanceof SSLException) {
+            return false;
+        }
+
+        // a plain InterruptedIOException means the thread was interrupted,
+        // its subclasses are timeouts
+        if (e.getClass() == InterruptedIOException.class) {
+            return false;
+        }
+
+        return idempotent;
+    }
+
+    // failures which happen before any of the request has been written
+    private static boolean neverSent(IOException e) {
+        return e instanceof ConnectException
+            || e instanceof ConnectTimeoutException
+            || e instanceof ConnectionPoolTimeoutException
+            || e instanceof UnknownHostException
+            || e instanceof NoRouteToHostException;
+    }
+
+    private long currentBudget() {
+        long current = this.budget.get();
+        if (current < 0) {
+            this.budget.compareAndSet(current, maxBudget());
+            current = this.budget.get();
+        }
+        return current;
+    }
+
+    private long maxBudget() {
+        return this.retryBudget * SCALE;
+    }
+}
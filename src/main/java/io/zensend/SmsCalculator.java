@@ -0,0 +1,151 @@
+package io.zensend;
+
+/**
+ * Works out the encoding and number of SMS parts a message body needs
+ * without sending it, following GSM 03.38.
+ *
+ * Bodies made up entirely of characters from the GSM 7-bit default alphabet
+ * and its extension table are sent as GSM: 160 septets in a single part or
+ * 153 per part once a user data header is needed for concatenation.
+ * Extension table characters take two septets and are never split across
+ * parts. Anything else needs UCS-2: 70 UTF-16 code units in a single part or
+ * 67 per part, with surrogate pairs kept in the same part.
+ *
+ * None of the methods allocate so they are safe to call on hot paths.
+ */
+public final class SmsCalculator {
+    static final int GSM_SINGLE_PART_SEPTETS = 160;
+    static final int GSM_MULTI_PART_SEPTETS = 153;
+    static final int UCS2_SINGLE_PART_CHARS = 70;
+    static final int UCS2_MULTI_PART_CHARS = 67;
+
+    // number of septets needed for each character up to GREEK_END, 0 if the
+    // character isn't in the GSM alphabet
+    private static final int GREEK_END = 0x3aa;
+    private static final byte[] SEPTETS = new byte[GREEK_END];
+
+    static {
+        String basic = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+        for (int i = 0; i < basic.length(); i++) {
+            SEPTETS[basic.charAt(i)] = 1;
+        }
+        String extension = "\f^{}\\[~]|";
+        for (int i = 0; i < extension.length(); i++) {
+            SEPTETS[extension.charAt(i)] = 2;
+        }
+    }
+
+    private static final char EURO = '€';
+
+    private SmsCalculator() {
+    }
+
+    /**
+     * The number of septets the character takes in the GSM alphabet: 1 for
+     * the default alphabet, 2 for the extension table or 0 if it can't be
+     * represented.
+     */
+    public static int septets(char c) {
+        if (c < GREEK_END) {
+            return SEPTETS[c];
+        }
+        return c == EURO ? 2 : 0;
+    }
+
+    public static boolean isGsm(CharSequence body) {
+        for (int i = 0; i < body.length(); i++) {
+            if (septets(body.charAt(i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static Message.SmsEncoding encodingFor(CharSequence body) {
+        return isGsm(body) ? Message.SmsEncoding.GSM : Message.SmsEncoding.UCS2;
+    }
+
+    public static int countParts(CharSequence body) {
+        return countParts(body, encodingFor(body));
+    }
+
+    /**
+     * Counts the parts needed to send the body with the given encoding. With
+     * GSM, characters outside the alphabet are counted as the single septet
+     * they would be replaced with.
+     */
+    public static int countParts(CharSequence body, Message.SmsEncoding encoding) {
+        if (encoding == Message.SmsEncoding.UCS2) {
+            return countUcs2Parts(body);
+        }
+        return countGsmParts(body);
+    }
+
+    /**
+     * Counts the parts needed for the message, using its smsEncoding if set
+     * or the encoding the body requires otherwise.
+     */
+    public static int countParts(Message message) {
+        CharSequence body = message.body == null ? "" : message.body;
+        if (message.smsEncoding == null) {
+            return countParts(body);
+        }
+        return countParts(body, message.smsEncoding);
+    }
+
+    /**
+     * Sets the message's smsEncoding from its body if it hasn't been set
+     * and returns the number of parts it will be sent in.
+     */
+    public static int prepare(Message message) {
+        CharSequence body = message.body == null ? "" : message.body;
+        if (message.smsEncoding == null) {
+            message.smsEncoding = encodingFor(body);
+        }
+        return countParts(body, message.smsEncoding);
+    }
+
+    private static int countGsmParts(CharSequence body) {
+        int total = 0;
+        for (int i = 0; i < body.length(); i++) {
+            total += Math.max(1, septets(body.charAt(i)));
+        }
+        if (total <= GSM_SINGLE_PART_SEPTETS) {
+            return 1;
+        }
+
+        int parts = 1;
+        int used = 0;
+        for (int i = 0; i < body.length(); i++) {
+            int size = Math.max(1, septets(body.charAt(i)));
+            if (used + size > GSM_MULTI_PART_SEPTETS) {
+                parts++;
+                used = 0;
+            }
+            used += size;
+        }
+        return parts;
+    }
+
+    private static int countUcs2Parts(CharSequence body) {
+        int length = body.length();
+        if (length <= UCS2_SINGLE_PART_CHARS) {
+            return 1;
+        }
+
+        int parts = 1;
+        int used = 0;
+        for (int i = 0; i < length; i++) {
+            int size = Character.isHighSurrogate(body.charAt(i)) && i + 1 < length
+                && Character.isLowSurrogate(body.charAt(i + 1)) ? 2 : 1;
+            if (used + size > UCS2_MULTI_PART_CHARS) {
+                parts++;
+                used = 0;
+            }
+            used += size;
+            i += size - 1;
+        }
+        return parts;
+    }
+}
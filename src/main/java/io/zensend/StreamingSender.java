@@ -0,0 +1,195 @@
+package io.zensend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends one message to a recipient list of any size without loading the
+ * whole list into memory.
+ *
+ * Numbers are read incrementally, validated and normalised to E.164 digits
+ * as {@link MsisdnList} does, and grouped into chunks of chunkSize which are
+ * sent as separate sendSms requests, with at most maxConcurrentRequests in
+ * flight. Reading pauses while that many requests are outstanding so memory
+ * use depends only on the chunk size and concurrency, not on the length of
+ * the list. The outcome of each chunk is passed to a {@link ResultSink}.
+ */
+public class StreamingSender {
+    public static interface ResultSink {
+        void onSuccess(long chunk, String[] numbers, SmsResult result);
+
+        void onFailure(long chunk, String[] numbers, Exception exception);
+
+        /**
+         * Called for entries which aren't valid numbers; they are skipped.
+         */
+        default void onInvalidNumber(String number) {
+        }
+    }
+
+    private final Client client;
+    private final int chunkSize;
+    private final int maxConcurrentRequests;
+
+    public StreamingSender(Client client) {
+        this(client, 1000, 4);
+    }
+
+    public StreamingSender(Client client, int chunkSize, int maxConcurrentRequests) {
+        if (chunkSize < 1 || maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("chunkSize and maxConcurrentRequests must be positive");
+        }
+        this.client = client;
+        this.chunkSize = chunkSize;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Sends the message to every number in the file, one number per line.
+     */
+    public long send(Message message, Path numbers, ResultSink sink) throws IOException {
+        InputStream in = Files.newInputStream(numbers);
+        try {
+            return send(message, in, sink);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sends the message to every number read from the stream, one number per
+     * line. The stream is not closed.
+     */
+    public long send(Message message, InputStream numbers, ResultSink sink) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(numbers, StandardCharsets.US_ASCII));
+        try {
+            return send(message, new Iterator<String>() {
+                private String next;
+
+                public boolean hasNext() {
+                    if (this.next == null) {
+                        try {
+                            this.next = reader.readLine();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    return this.next != null;
+                }
+
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    String number = this.next;
+                    this.next = null;
+                    return number;
+                }
+            }, sink);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sends the message to every number from the iterator and waits for all
+     * chunks to complete. The numbers field of the message is ignored.
+     * Returns the number of valid numbers sent to.
+     */
+    public long send(Message message, Iterator<String> numbers, final ResultSink sink) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(this.maxConcurrentRequests);
+        Semaphore inFlight = new Semaphore(this.maxConcurrentRequests);
+
+        long chunk = 0;
+        long count = 0;
+        String[] pending = new String[this.chunkSize];
+        int size = 0;
+        try {
+            while (numbers.hasNext()) {
+                String number = numbers.next().trim();
+                if (number.isEmpty()) {
+                    continue;
+                }
+                long msisdn = MsisdnList.normalise(number);
+                if (msisdn < 0) {
+                    sink.onInvalidNumber(number);
+                    continue;
+                }
+
+                pending[size++] = Long.toString(msisdn);
+                count++;
+                if (size == this.chunkSize) {
+                    submit(executor, inFlight, message, chunk++, pending, sink);
+                    pending = new String[this.chunkSize];
+                    size = 0;
+                }
+            }
+
+            if (size > 0) {
+                String[] last = new String[size];
+                System.arraycopy(pending, 0, last, 0, size);
+                submit(executor, inFlight, message, chunk, last, sink);
+            }
+
+            // wait for the outstanding chunks
+            inFlight.acquire(this.maxConcurrentRequests);
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void submit(Executor executor, final Semaphore inFlight, Message template, final long chunk,
+            final String[] numbers, final ResultSink sink) throws InterruptedException {
+        inFlight.acquire();
+
+        final Message message = new Message();
+        message.body = template.body;
+        message.originator = template.originator;
+        message.originatorType = template.originatorType;
+        message.timeToLiveInMinutes = template.timeToLiveInMinutes;
+        message.smsEncoding = template.smsEncoding;
+        message.numbers = numbers;
+
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    SmsResult result;
+                    try {
+                        result = client.sendSms(message);
+                    } catch (Exception e) {
+                        sink.onFailure(chunk, numbers, e);
+                        return;
+                    }
+                    // outside the try so an exception from the sink isn't
+                    // reported as a failed send
+                    sink.onSuccess(chunk, numbers, result);
+                } finally {
+                    inFlight.release();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package io.zensend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves many ZenSend accounts, such as a reseller's sub-accounts, from one
+ * connection pool.
+ *
+ * Each API key gets a lightweight {@link Client} from {@link #tenant}, created
+ * on first use. Tenants share the pool's transport, JSON readers, circuit
+ * breakers and listeners but have their own rate limiters, made by the
+ * RateLimiterFactory, their own copy of the config's {@link RetryPolicy} and
+ * their own {@link BalanceTracker}, so a busy, failing or throttled account
+ * doesn't hold up the others. Closing a tenant does nothing; closing the pool
+ * closes the shared transport.
+ */
+public class TenantPool implements Closeable {
+    public static interface RateLimiterFactory {
+        /**
+         * Called once per tenant and endpoint. Returns null for no limit.
+         */
+        RateLimiter create(String apiKey, Endpoint endpoint);
+    }
+
+    private static final RateLimiterFactory NO_LIMITS = new RateLimiterFactory() {
+        public RateLimiter create(String apiKey, Endpoint endpoint) {
+            return null;
+        }
+    };
+
+    final ClientConfig config;
+    final Transport transport;
+    final Listeners listeners;
+    private final RateLimiterFactory rateLimiterFactory;
+    private final ConcurrentHashMap<String, Client> tenants = new ConcurrentHashMap<String, Client>();
+
+    public TenantPool() {
+        this(new ClientConfig());
+    }
+
+    /**
+     * The config's rateLimiters are ignored as they would be shared by every
+     * tenant; use a RateLimiterFactory instead.
+     */
+    public TenantPool(ClientConfig config) {
+        this(config, NO_LIMITS);
+    }
+
+    public TenantPool(ClientConfig config, RateLimiterFactory rateLimiterFactory) {
+        this.config = config;
+        this.transport = config.createTransport();
+        this.listeners = Listeners.of(config.listeners);
+        this.rateLimiterFactory = rateLimiterFactory;
+    }
+
+    /**
+     * The client for the API key, created on first use.
+     */
+    public Client tenant(String apiKey) {
+        Client tenant = this.tenants.get(apiKey);
+        if (tenant == null) {
+            tenant = this.tenants.computeIfAbsent(apiKey, key -> new Client(key, this, rateLimiters(key)));
+        }
+        return tenant;
+    }
+
+    /**
+     * Forgets the tenant, e.g. when a sub-account is closed. Calls already
+     * made through its client are unaffected.
+     */
+    public void remove(String apiKey) {
+        this.tenants.remove(apiKey);
+    }
+
+    public int size() {
+        return this.tenants.size();
+    }
+
+    /**
+     * The most recently seen balance of each tenant that has made a request,
+     * keyed by API key.
+     */
+    public Map<String, BigDecimal> balancesInPence() {
+        Map<String, BigDecimal> balances = new HashMap<String, BigDecimal>();
+        for (Map.Entry<String, Client> tenant : this.tenants.entrySet()) {
+            BigDecimal balance = tenant.getValue().balanceTracker().balanceInPence();
+            if (balance != null) {
+                balances.put(tenant.getKey(), balance);
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Opens connections to the api and verify hosts ahead of the first
+     * tenant's requests.
+     */
+    public void warmUp() throws IOException {
+        this.transport.warmUp(this.config.url);
+        if (!this.config.verifyUrl.equals(this.config.url)) {
+            this.transport.warmUp(this.config.verifyUrl);
+        }
+    }
+
+    public void close() throws IOException {
+        this.tenants.clear();
+        this.transport.close();
+    }
+
+    private Map<Endpoint, RateLimiter> rateLimiters(String apiKey) {
+        Map<Endpoint, RateLimiter> rateLimiters = null;
+        for (Endpoint endpoint : Endpoint.values()) {
+            RateLimiter rateLimiter = this.rateLimiterFactory.create(apiKey, endpoint);
+            if (rateLimiter != null) {
+                if (rateLimiters == null) {
+                    rateLimiters = new EnumMap<Endpoint, RateLimiter>(Endpoint.class);
+                }
+                rateLimiters.put(endpoint, rateLimiter);
+            }
+        }
+        // tenants without limits share the empty map
+        return rateLimiters == null ? Collections.<Endpoint, RateLimiter>emptyMap() : rateLimiters;
+    }
+}
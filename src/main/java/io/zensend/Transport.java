@@ -0,0 +1,109 @@
+package io.zensend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sends the HTTP requests made by a {@link Client}.
+ *
+ * {@link ApacheTransport} is the default; {@link OkHttpTransport} multiplexes
+ * requests over HTTP/2 and {@link InMemoryTransport} answers them without a
+ * network at all. Implementations must be thread safe.
+ */
+public interface Transport extends Closeable {
+    Response execute(Request request) throws IOException;
+
+    /**
+     * Opens a connection to the host of the given base url ahead of the first
+     * request. Returns the negotiated protocol, e.g. "h2" or "http/1.1", or
+     * null if the transport doesn't know. {@link OkHttpTransport} and an
+     * {@link ApacheTransport} built from a ClientConfig support it; an
+     * ApacheTransport wrapping any other HttpClient throws
+     * IllegalStateException, and transports with no connections to open, such
+     * as {@link InMemoryTransport}, return null.
+     */
+    default String warmUp(String url) throws IOException {
+        return null;
+    }
+
+    public static final class Request {
+        public final Endpoint endpoint;
+        public final String method;
+        // including the query string
+        public final String url;
+        // the query parameters, already encoded in the url
+        public final Map<String, String> params;
+        public final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+        final FormEntity body;
+
+        Request(Endpoint endpoint, String method, String url, Map<String, String> params, FormEntity body) {
+            this.endpoint = endpoint;
+            this.method = method;
+            this.url = url;
+            this.params = Collections.unmodifiableMap(params);
+            this.body = body;
+        }
+
+        public boolean hasBody() {
+            return this.body != null;
+        }
+
+        public String contentType() {
+            return this.body == null ? null : this.body.getContentType().getValue();
+        }
+
+        public long contentLength() {
+            return this.body == null ? 0 : this.body.getContentLength();
+        }
+
+        /**
+         * Writes the body to the stream. Can be called more than once.
+         */
+        public void writeBody(OutputStream out) throws IOException {
+            if (this.body != null) {
+                this.body.writeTo(out);
+            }
+        }
+
+        public byte[] body() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) contentLength());
+            writeBody(out);
+            return out.toByteArray();
+        }
+    }
+
+    public static class Response implements Closeable {
+        public final int status;
+        public final String contentType;
+        // -1 if unknown
+        public final long contentLength;
+        private final InputStream body;
+
+        public Response(int status, String contentType, long contentLength, InputStream body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+            this.body = body;
+        }
+
+        public InputStream body() {
+            return this.body;
+        }
+
+        /**
+         * Releases the connection the response was read from.
+         */
+        public void close() throws IOException {
+            if (this.body != null) {
+                this.body.close();
+            }
+        }
+    }
+}
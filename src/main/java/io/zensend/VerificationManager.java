@@ -0,0 +1,216 @@
+package io.zensend;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits for any number of MSISDN verification sessions to be confirmed
+ * without a thread per session.
+ *
+ * Every open session is polled with {@link AsyncClient#msisdnVerificationStatus}
+ * from one scheduler thread, at most maxConcurrentPolls at a time. Each
+ * session starts at initialPollIntervalInMilliseconds and backs off to
+ * maxPollIntervalInMilliseconds while it isn't confirmed yet. The future for a
+ * session completes with the MSISDN once it's confirmed, exceptionally with a
+ * {@link ZenSendException} if the API rejects the session, or with a
+ * TimeoutException once sessionTimeoutInMilliseconds has passed. I/O errors,
+ * 429 and 5xx responses are treated as transient and the session is polled
+ * again later. Closing the manager cancels the sessions still open and
+ * ignores polls that complete afterwards.
+ */
+public class VerificationManager implements Closeable {
+    private static final double BACKOFF_MULTIPLIER = 1.5;
+
+    private final AsyncClient client;
+    private final int maxConcurrentPolls;
+    private final long initialPollIntervalInMilliseconds;
+    private final long maxPollIntervalInMilliseconds;
+    private final long sessionTimeoutInMilliseconds;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "zensend-verification");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    // only touched on the scheduler thread
+    private final Queue<Session> due = new ArrayDeque<Session>();
+    private int polling;
+
+    public VerificationManager(AsyncClient client) {
+        this(client, 64, 2 * 1000, 30 * 1000, 10 * 60 * 1000);
+    }
+
+    public VerificationManager(AsyncClient client, int maxConcurrentPolls, long initialPollIntervalInMilliseconds,
+            long maxPollIntervalInMilliseconds, long sessionTimeoutInMilliseconds) {
+        if (maxConcurrentPolls < 1) {
+            throw new IllegalArgumentException("maxConcurrentPolls must be positive");
+        }
+        this.client = client;
+        this.maxConcurrentPolls = maxConcurrentPolls;
+        this.initialPollIntervalInMilliseconds = initialPollIntervalInMilliseconds;
+        this.maxPollIntervalInMilliseconds = maxPollIntervalInMilliseconds;
+        this.sessionTimeoutInMilliseconds = sessionTimeoutInMilliseconds;
+    }
+
+    /**
+     * Creates a verification session for the number and returns a future for
+     * the confirmed MSISDN.
+     */
+    public CompletableFuture<String> verify(String number) {
+        return verify(number, null, null);
+    }
+
+    public CompletableFuture<String> verify(String number, String message, String originator) {
+        return this.client.createMsisdnVerification(number, message, originator).thenCompose(this::track);
+    }
+
+    /**
+     * Tracks a session that has already been created. Cancelling the returned
+     * future stops polling it.
+     */
+    public CompletableFuture<String> track(String session) {
+        if (this.closed) {
+            throw new IllegalStateException("VerificationManager is closed");
+        }
+        final Session tracked = new Session(session, System.currentTimeMillis() + this.sessionTimeoutInMilliseconds,
+            this.initialPollIntervalInMilliseconds);
+        this.sessions.add(tracked);
+        // also stops counting sessions the caller cancelled
+        tracked.future.whenComplete((msisdn, ex) -> this.sessions.remove(tracked));
+        schedule(tracked);
+        return tracked.future;
+    }
+
+    /**
+     * The number of sessions waiting to be confirmed.
+     */
+    public int openSessions() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Stops polling and cancels the futures of all open sessions.
+     */
+    public void close() {
+        this.closed = true;
+        this.scheduler.shutdownNow();
+        for (Session session : this.sessions) {
+            session.future.cancel(false);
+        }
+    }
+
+    private void schedule(final Session session) {
+        if (this.closed) {
+            return;
+        }
+        try {
+            this.scheduler.schedule(new Runnable() {
+                public void run() {
+                    onDue(session);
+                }
+            }, session.interval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed since the check, which cancels the session
+        }
+    }
+
+    private void onDue(Session session) {
+        if (session.future.isDone()) {
+            return;
+        }
+        if (System.currentTimeMillis() >= session.deadline) {
+            this.sessions.remove(session);
+            session.future.completeExceptionally(new TimeoutException("Verification session expired: " + session.id));
+            return;
+        }
+        this.due.add(session);
+        poll();
+    }
+
+    private void poll() {
+        while (this.polling < this.maxConcurrentPolls && !this.due.isEmpty()) {
+            final Session session = this.due.poll();
+            if (session.future.isDone()) {
+                continue;
+            }
+            CompletableFuture<String> status;
+            try {
+                status = this.client.msisdnVerificationStatus(session.id);
+            } catch (RuntimeException e) {
+                this.sessions.remove(session);
+                session.future.completeExceptionally(e);
+                continue;
+            }
+            this.polling++;
+            status.whenComplete((msisdn, ex) -> {
+                if (this.closed) {
+                    return;
+                }
+                // back to the scheduler thread which owns the polling state
+                try {
+                    this.scheduler.execute(new Runnable() {
+                        public void run() {
+                            polling--;
+                            onStatus(session, msisdn, ex);
+                            poll();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // closed since the check
+                }
+            });
+        }
+    }
+
+    private void onStatus(Session session, String msisdn, Throwable ex) {
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+
+        if (ex == null && msisdn != null) {
+            this.sessions.remove(session);
+            session.future.complete(msisdn);
+            return;
+        }
+        if (ex instanceof ZenSendException) {
+            int httpCode = ((ZenSendException) ex).httpCode;
+            if (httpCode != 429 && httpCode < 500) {
+                this.sessions.remove(session);
+                session.future.completeExceptionally(ex);
+                return;
+            }
+        }
+
+        session.interval = Math.min(this.maxPollIntervalInMilliseconds, (long) (session.interval * BACKOFF_MULTIPLIER));
+        schedule(session);
+    }
+
+    private static class Session {
+        final String id;
+        final long deadline;
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        long interval;
+
+        Session(String id, long deadline, long interval) {
+            this.id = id;
+            this.deadline = deadline;
+            this.interval = interval;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class AsyncClientTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private AsyncClient client;
+
+    @Before
+    public void setup() {
+        client = new AsyncClient(apiKey, HttpAsyncClients.createDefault(), host, host);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void sendSmsSuccessTest() throws Exception {
+        Message message = new Message();
+        message.numbers = new String[]{"44787878787", "449999999999"};
+        message.body = "message body£";
+        message.originator = "orig";
+
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"eb224587-840e-456c-9e36-7e8af1fe0d56\",\"numbers\":2,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":0.04,\"new_balance_in_pence\":3985.8}}")));
+
+        SmsResult result = client.sendSms(message).get();
+
+        assertEquals("eb224587-840e-456c-9e36-7e8af1fe0d56", result.txGuid);
+        assertEquals(2, result.numbers);
+        assertEquals(new BigDecimal("3985.8"), result.newBalanceInPence);
+
+        verify(postRequestedFor(urlPathEqualTo("/v3/sendsms"))
+            .withRequestBody(equalTo("BODY=message+body%C2%A3&NUMBERS=44787878787%2C449999999999&ORIGINATOR=orig")));
+    }
+
+    @Test
+    public void checkBalanceFailureTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(403)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"failure\":{\"failcode\":\"NOT_AUTHORIZED\"}}")));
+
+        try {
+            client.checkBalance().get();
+            fail();
+        } catch (ExecutionException ex) {
+            ZenSendException cause = (ZenSendException) ex.getCause();
+            assertEquals(403, cause.httpCode);
+            assertEquals("NOT_AUTHORIZED", cause.failCode);
+        }
+    }
+
+    @Test
+    public void invalidResponseTypeTest() throws Exception {
+        stubFor(get(urlPathEqualTo("/v3/prices"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(500)
+                .withHeader("Content-Type", "text/html")
+                .withBody("<body>hello</body>")));
+
+        try {
+            client.getPrices().get();
+            fail();
+        } catch (ExecutionException ex) {
+            assertEquals(500, ((ZenSendException) ex.getCause()).httpCode);
+        }
+    }
+
+    @Test
+    public void msisdnVerificationStatusTest() throws Exception {
+        stubFor(get(urlPathEqualTo("/api/msisdn_verify"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .withQueryParam("SESSION", equalTo("SESS"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\": {\"msisdn\":\"441234567890\"}}")));
+
+        assertEquals("441234567890", client.msisdnVerificationStatus("SESS").get());
+    }
+}
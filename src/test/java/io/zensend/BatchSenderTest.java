@@ -0,0 +1,116 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class BatchSenderTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private Client client;
+
+    @Before
+    public void setup() {
+        client = new Client(apiKey, HttpClients.createDefault(), host, host);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void coalescesMatchingMessagesTest() throws Exception {
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"TX\",\"numbers\":3,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":0.06,\"new_balance_in_pence\":3985.8}}")));
+
+        BatchSender sender = new BatchSender(client, 3, 60 * 1000);
+        CompletableFuture<SmsResult> first = sender.send(message("447777777771"));
+        CompletableFuture<SmsResult> second = sender.send(message("447777777772", "447777777773"));
+
+        SmsResult firstResult = first.get();
+        SmsResult secondResult = second.get();
+        sender.close();
+
+        assertEquals("TX", firstResult.txGuid);
+        assertEquals(1, firstResult.numbers);
+        assertEquals(0, new BigDecimal("0.02").compareTo(firstResult.costInPence));
+        assertEquals("TX", secondResult.txGuid);
+        assertEquals(2, secondResult.numbers);
+        assertEquals(0, new BigDecimal("0.04").compareTo(secondResult.costInPence));
+
+        verify(1, postRequestedFor(urlPathEqualTo("/v3/sendsms"))
+            .withRequestBody(equalTo("BODY=body&NUMBERS=447777777771%2C447777777772%2C447777777773&ORIGINATOR=orig")));
+    }
+
+    @Test
+    public void flushesAfterLingerTest() throws Exception {
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(403)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"failure\":{\"failcode\":\"NOT_AUTHORIZED\"}}")));
+
+        BatchSender sender = new BatchSender(client, 1000, 10);
+        Message other = message("447777777772");
+        other.body = "other body";
+        CompletableFuture<SmsResult> first = sender.send(message("447777777771"));
+        CompletableFuture<SmsResult> second = sender.send(other);
+
+        for (CompletableFuture<SmsResult> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException ex) {
+                assertEquals("NOT_AUTHORIZED", ((ZenSendException) ex.getCause()).failCode);
+            }
+        }
+        sender.close();
+
+        verify(2, postRequestedFor(urlPathEqualTo("/v3/sendsms")));
+    }
+
+    @Test
+    public void sendAfterCloseTest() throws Exception {
+        BatchSender sender = new BatchSender(client, 1000, 10);
+        sender.close();
+
+        try {
+            sender.send(message("447777777771"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("BatchSender is closed", e.getMessage());
+        }
+        verify(0, postRequestedFor(urlPathEqualTo("/v3/sendsms")));
+    }
+
+    private static Message message(String... numbers) {
+        Message message = new Message();
+        message.numbers = numbers;
+        message.body = "body";
+        message.originator = "orig";
+        return message;
+    }
+}
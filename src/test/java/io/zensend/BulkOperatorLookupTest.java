@@ -0,0 +1,100 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class BulkOperatorLookupTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private Client client;
+
+    @Before
+    public void setup() {
+        client = new Client(apiKey, HttpClients.createDefault(), host, host);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void lookupOperatorsTest() throws Exception {
+        stubLookup("447777777771", 200, "{\"success\":{\"mcc\":\"234\",\"mnc\":\"34\",\"operator\":\"eeora-uk\",\"new_balance_in_pence\":100.0,\"cost_in_pence\":2.5}}");
+        stubLookup("447777777772", 200, "{\"success\":{\"mcc\":\"234\",\"mnc\":\"10\",\"operator\":\"o2-uk\",\"new_balance_in_pence\":97.5,\"cost_in_pence\":2.5}}");
+        stubLookup("447777777773", 400, "{\"failure\":{\"failcode\":\"DATA_MISSING\",\"cost_in_pence\":1.0,\"new_balance_in_pence\":96.5}}");
+
+        BulkOperatorLookup.Results results = client.lookupOperators(
+            Arrays.asList("447777777771", "447777777772", " 447777777771", "447777777773", "447777777772", ""));
+
+        assertEquals(2, results.results.size());
+        assertEquals("eeora-uk", results.results.get("447777777771").operator);
+        assertEquals("o2-uk", results.results.get("447777777772").operator);
+        assertEquals(1, results.failures.size());
+        assertEquals("DATA_MISSING", ((ZenSendException) results.failures.get("447777777773")).failCode);
+        assertEquals(0, new BigDecimal("6.0").compareTo(results.costInPence));
+
+        // duplicates were only looked up once
+        verify(1, getRequestedFor(urlEqualTo("/v3/operator_lookup?NUMBER=447777777771")));
+    }
+
+    @Test
+    public void progressTest() throws Exception {
+        stubFor(get(urlPathEqualTo("/v3/operator_lookup"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"mcc\":\"234\",\"mnc\":\"34\",\"operator\":\"eeora-uk\",\"cost_in_pence\":2.5}}")));
+
+        String[] numbers = new String[50];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = Long.toString(447700000000L + i);
+        }
+
+        final AtomicLong results = new AtomicLong();
+        final AtomicLong last = new AtomicLong();
+        BigDecimal cost = new BulkOperatorLookup(client, 4).lookupOperators(Arrays.asList(numbers),
+            new BulkOperatorLookup.ResultListener() {
+                public void onResult(String number, OperatorLookupResult result) {
+                    results.incrementAndGet();
+                }
+
+                public void onFailure(String number, Exception exception) {
+                }
+
+                public void onProgress(long completed, long total) {
+                    assertEquals(50, total);
+                    last.accumulateAndGet(completed, Math::max);
+                }
+            });
+
+        assertEquals(50, results.get());
+        assertEquals(50, last.get());
+        assertEquals(0, new BigDecimal("125").compareTo(cost));
+    }
+
+    private static void stubLookup(String number, int status, String body) {
+        stubFor(get(urlEqualTo("/v3/operator_lookup?NUMBER=" + number))
+            .willReturn(aResponse()
+                .withStatus(status)
+                .withHeader("Content-Type", "application/json")
+                .withBody(body)));
+    }
+}
@@ -0,0 +1,136 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class CircuitBreakerTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    @Test
+    public void stateTransitionsTest() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 4, 10, 50, 2);
+
+        // client errors don't count against the endpoint
+        for (int i = 0; i < 10; i++) {
+            breaker.onOutcome(acquire(breaker), new ZenSendException(400, "BAD", null, null, null));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        for (int i = 0; i < 4; i++) {
+            breaker.onOutcome(acquire(breaker), new SocketTimeoutException());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.4, breaker.failureRate(), 0.001);
+
+        breaker.onOutcome(acquire(breaker), new ZenSendException(503, null, null, null, null));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(CircuitBreaker.DENIED, breaker.tryAcquire());
+
+        Thread.sleep(60);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        long first = acquire(breaker);
+        long second = acquire(breaker);
+        // only halfOpenCalls trial requests at a time
+        assertEquals(CircuitBreaker.DENIED, breaker.tryAcquire());
+        breaker.onOutcome(first, null);
+        breaker.onOutcome(second, new IOException());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        Thread.sleep(60);
+        first = acquire(breaker);
+        second = acquire(breaker);
+        breaker.onOutcome(first, null);
+        breaker.onOutcome(second, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.failureRate(), 0);
+    }
+
+    @Test
+    public void staleOutcomeTest() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 2, 10, 50, 1);
+
+        // slow requests let through before the circuit opens
+        long slowSuccess = acquire(breaker);
+        long slowFailure = acquire(breaker);
+        breaker.onOutcome(acquire(breaker), new IOException());
+        breaker.onOutcome(acquire(breaker), new IOException());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        Thread.sleep(60);
+        long trial = acquire(breaker);
+
+        // finishing during the trial they count for nothing
+        breaker.onOutcome(slowSuccess, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onOutcome(slowFailure, new IOException());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(CircuitBreaker.DENIED, breaker.tryAcquire());
+
+        breaker.onOutcome(trial, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.failureRate(), 0);
+    }
+
+    @Test
+    public void clientFailsFastTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance"))
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "text/html")
+                .withBody("<body>unavailable</body>")));
+
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 2, 10, 60 * 1000, 1);
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.circuitBreakers.put(Endpoint.CHECK_BALANCE, breaker);
+        config.retryPolicy = new RetryPolicy();
+        config.retryPolicy.initialBackoffInMilliseconds = 1;
+
+        Client client = new Client(apiKey, config);
+        try {
+            // the second attempt opens the circuit and the third fails fast
+            try {
+                client.checkBalance();
+                fail();
+            } catch (CircuitOpenException e) {
+                assertEquals(Endpoint.CHECK_BALANCE, e.endpoint);
+            }
+            assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+            verify(2, getRequestedFor(urlEqualTo("/v3/checkbalance")));
+        } finally {
+            client.close();
+        }
+
+        AsyncClient asyncClient = new AsyncClient(apiKey, config);
+        try {
+            asyncClient.checkBalance().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitOpenException);
+        } finally {
+            asyncClient.close();
+        }
+        verify(2, getRequestedFor(urlEqualTo("/v3/checkbalance")));
+    }
+
+    private static long acquire(CircuitBreaker breaker) {
+        long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.DENIED, permit);
+        return permit;
+    }
+}
@@ -0,0 +1,59 @@
+package io.zensend;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.fluent.Form;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class FormEntityTest {
+
+    @Test
+    public void matchesUrlEncodedFormEntityTest() throws IOException {
+        String[] values = {
+            "", "plain", "with space", "a+b=c&d", "-_.*~!'()", "£€✓", "emoji 😀",
+            "lone \uD83D surrogate", "trailing \uDE00", "\u0000\u007f\u0080߿ࠀ￿"
+        };
+
+        for (String value : values) {
+            FormEntity entity = new FormEntity().add("BODY", value).add("ORIGINATOR", (String) null);
+            HttpEntity expected = new UrlEncodedFormEntity(
+                Form.form().add("BODY", value).add("ORIGINATOR", null).build(), Consts.UTF_8);
+
+            assertEncoded(expected, entity);
+        }
+    }
+
+    @Test
+    public void numbersTest() throws IOException {
+        String[] numbers = new String[5000];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = "+" + (447700000000L + i);
+        }
+
+        FormEntity entity = new FormEntity().add("BODY", "body").add("NUMBERS", numbers);
+        HttpEntity expected = new UrlEncodedFormEntity(
+            Form.form().add("BODY", "body").add("NUMBERS", String.join(",", numbers)).build(), Consts.UTF_8);
+
+        assertEncoded(expected, entity);
+        // repeatable
+        assertEncoded(expected, entity);
+    }
+
+    private static void assertEncoded(HttpEntity expected, FormEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        String body = EntityUtils.toString(expected);
+        assertEquals(body, new String(out.toByteArray(), Consts.ASCII));
+        assertEquals(expected.getContentLength(), entity.getContentLength());
+        assertEquals(body, EntityUtils.toString(entity));
+        assertEquals(expected.getContentType().getValue(), entity.getContentType().getValue());
+    }
+}
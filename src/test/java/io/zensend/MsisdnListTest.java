@@ -0,0 +1,119 @@
+package io.zensend;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.http.Consts;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.fluent.Form;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class MsisdnListTest {
+
+    @Test
+    public void normaliseTest() {
+        assertEquals(447700900123L, MsisdnList.parse("447700900123"));
+        assertEquals(447700900123L, MsisdnList.parse("+44 7700 900123"));
+        assertEquals(447700900123L, MsisdnList.parse("0044 (7700) 900-123"));
+        assertEquals(447700900123L, MsisdnList.parse("+44 (0)7700 900123"));
+        assertEquals(447700900123L, MsisdnList.parse("+44(0)7700900123"));
+        assertEquals(447700900123L, MsisdnList.parse("  +44.7700.900.123"));
+        assertEquals(6831234L, MsisdnList.parse("+683 1234"));
+        assertEquals(999999999999999L, MsisdnList.parse("999999999999999"));
+    }
+
+    @Test
+    public void invalidTest() {
+        String[] invalid = {
+            null, "", "+", "00", "123456", "07700900123", "+0447700900123",
+            "1234567890123456", "44770090012a", "44,7700900123", "44+7700900123",
+            "(0)7700 900123"
+        };
+        for (String number : invalid) {
+            assertFalse(number, MsisdnList.isValid(number));
+            try {
+                MsisdnList.parse(number);
+                fail(number);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+
+        try {
+            new MsisdnList().add(123456L);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void deduplicateTest() {
+        MsisdnList list = new MsisdnList(2);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(list.add(447700000000L + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(list.add("+" + (447700000000L + i)));
+        }
+
+        assertEquals(10000, list.size());
+        assertTrue(list.contains(447700009999L));
+        assertFalse(list.contains(447700010000L));
+        assertEquals(447700000000L, list.get(0));
+        assertEquals(447700009999L, list.get(9999));
+        assertArrayEquals(new String[]{"447700000000", "447700000001"},
+            MsisdnList.of("+447700000000", "447700000001", "0044 7700 000000").toStrings());
+    }
+
+    @Test
+    public void formTest() throws IOException {
+        MsisdnList list = new MsisdnList();
+        for (int i = 0; i < 5000; i++) {
+            list.add(1000000L + i * 199999999999L);
+        }
+
+        FormEntity entity = new FormEntity().add("BODY", "body").add("NUMBERS", list).add("ORIGINATOR", "orig");
+        String expected = EntityUtils.toString(new UrlEncodedFormEntity(Form.form()
+            .add("BODY", "body")
+            .add("NUMBERS", String.join(",", list.toStrings()))
+            .add("ORIGINATOR", "orig").build(), Consts.UTF_8));
+
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            assertEquals(expected, new String(out.toByteArray(), Consts.ASCII));
+            assertEquals(expected.length(), entity.getContentLength());
+        }
+    }
+
+    @Test
+    public void sendSmsRequestTest() throws IOException {
+        Message message = new Message();
+        message.body = "body";
+        message.originator = "orig";
+        message.msisdns = MsisdnList.of("+447700900123", "447700900124");
+
+        Transport.Request request = Protocol.sendSmsRequest("http://localhost", message);
+        assertEquals("BODY=body&NUMBERS=447700900123%2C447700900124&ORIGINATOR=orig",
+            new String(request.body(), Consts.ASCII));
+
+        message.numbers = new String[]{"447700900125"};
+        try {
+            Protocol.sendSmsRequest("http://localhost", message);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void jsonTest() throws IOException {
+        Message message = new Message();
+        message.body = "body";
+        message.msisdns = MsisdnList.of(447700900123L, 447700900124L);
+
+        Message read = Protocol.MESSAGE_READER.readValue(Protocol.MESSAGE_WRITER.writeValueAsBytes(message));
+        assertArrayEquals(message.msisdns.toArray(), read.msisdns.toArray());
+    }
+}
@@ -0,0 +1,121 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class OperatorLookupCacheTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private Client client;
+
+    @Before
+    public void setup() {
+        client = new Client(apiKey, HttpClients.createDefault(), host, host);
+
+        stubFor(get(urlPathEqualTo("/v3/operator_lookup"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"mcc\":\"234\",\"mnc\":\"34\",\"operator\":\"eeora-uk\",\"new_balance_in_pence\":3985.84,\"cost_in_pence\":15.0}}")));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void cachesLookupsTest() throws Exception {
+        OperatorLookupCache cache = new OperatorLookupCache(client, 1000, 60 * 1000);
+
+        OperatorLookupResult first = cache.lookupOperator("447777777777");
+        OperatorLookupResult second = cache.lookupOperator("447777777777");
+
+        assertEquals(new BigDecimal("15.0"), first.costInPence);
+        assertEquals("eeora-uk", second.operator);
+        assertEquals(BigDecimal.ZERO, second.costInPence);
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        verify(1, getRequestedFor(urlPathEqualTo("/v3/operator_lookup")));
+    }
+
+    @Test
+    public void expiresEntriesTest() throws Exception {
+        OperatorLookupCache cache = new OperatorLookupCache(client, 1000, 0);
+
+        cache.lookupOperator("447777777777");
+        cache.lookupOperator("447777777777");
+
+        assertEquals(2, cache.missCount());
+        verify(2, getRequestedFor(urlPathEqualTo("/v3/operator_lookup")));
+    }
+
+    @Test
+    public void segmentTest() {
+        final int maxEntries = 100;
+        OperatorLookupCache.Segment segment = new OperatorLookupCache.Segment(maxEntries);
+        Map<Long, OperatorLookupResult> expected = new LinkedHashMap<Long, OperatorLookupResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, OperatorLookupResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        // a small key range so gets, updates, removes and evictions all collide
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long key = 447700000000L + random.nextInt(300);
+            switch (random.nextInt(4)) {
+                case 0:
+                    segment.remove(key);
+                    expected.remove(key);
+                    break;
+                case 1:
+                    OperatorLookupResult result = new OperatorLookupResult();
+                    segment.put(key, result, Long.MAX_VALUE);
+                    expected.put(key, result);
+                    break;
+                default:
+                    assertSame(expected.get(key), segment.get(key, 0));
+            }
+            assertEquals(expected.size(), segment.size());
+        }
+
+        for (Map.Entry<Long, OperatorLookupResult> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), segment.get(entry.getKey(), 0));
+        }
+        segment.clear();
+        assertEquals(0, segment.size());
+        assertNull(segment.get(expected.keySet().iterator().next(), 0));
+    }
+
+    @Test
+    public void keyTest() {
+        assertEquals(447777777777L, OperatorLookupCache.key("447777777777"));
+        assertEquals(447777777777L, OperatorLookupCache.key("+447777777777"));
+        assertEquals(-1, OperatorLookupCache.key("07777777777"));
+        assertEquals(-1, OperatorLookupCache.key("4477a7777777"));
+        assertEquals(-1, OperatorLookupCache.key("1234567890123456789"));
+    }
+}
@@ -0,0 +1,207 @@
+package io.zensend;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboxTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("outbox");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        for (Path path : Files.newDirectoryStream(this.directory)) {
+            Files.delete(path);
+        }
+        Files.delete(this.directory);
+    }
+
+    @Test
+    public void sendTest() throws Exception {
+        FakeClient client = new FakeClient(null);
+        RecordingListener listener = new RecordingListener();
+        // small segments so the journal rolls over
+        Outbox outbox = new Outbox(client, this.directory, listener, 2, 4096);
+
+        for (int i = 0; i < 100; i++) {
+            outbox.enqueue(message("body " + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(listener.sent.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, outbox.pending());
+        outbox.close();
+
+        // completed segments are removed and nothing is resent
+        assertTrue(count(this.directory) <= 1);
+        Outbox reopened = new Outbox(client, this.directory, listener);
+        assertEquals(0, reopened.pending());
+        reopened.close();
+        assertEquals(100, client.sent.size());
+        assertTrue(listener.uncertain.isEmpty());
+    }
+
+    @Test
+    public void recoveryTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FakeClient hanging = new FakeClient(release);
+        // one worker which gets stuck sending the first message, as if the
+        // process died part way through the request
+        Outbox crashed = new Outbox(hanging, this.directory, new RecordingListener(), 1, 1024 * 1024);
+        long first = crashed.enqueue(message("first"));
+        long second = crashed.enqueue(message("second"));
+        assertTrue(hanging.attempted.await(5, TimeUnit.SECONDS));
+
+        FakeClient client = new FakeClient(null);
+        RecordingListener listener = new RecordingListener();
+        Outbox outbox = new Outbox(client, this.directory, listener);
+
+        assertEquals(1, listener.uncertain.size());
+        assertEquals(Long.valueOf(first), listener.uncertain.get(0));
+        assertEquals(Long.valueOf(second), listener.sent.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, client.sent.size());
+        assertEquals("second", client.sent.get(0).body);
+        assertEquals("447777777777", client.sent.get(0).numbers[0]);
+        assertEquals(Message.OriginatorType.ALPHA, client.sent.get(0).originatorType);
+        assertTrue(crashed.enqueue(message("later")) > second);
+
+        release.countDown();
+        crashed.close();
+        outbox.close();
+    }
+
+    @Test
+    public void recoveryAcrossSegmentsTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        GatedClient gated = new GatedClient(release, gate);
+        RecordingListener crashedListener = new RecordingListener();
+        // the stuck message keeps the first segment live while the outcomes
+        // of the messages enqueued alongside it are written to later ones
+        Outbox crashed = new Outbox(gated, this.directory, crashedListener, 2, 1024);
+        long stuck = crashed.enqueue(message("stuck"));
+        for (int i = 0; i < 20; i++) {
+            crashed.enqueue(message("body " + i));
+        }
+        assertTrue(count(this.directory) > 1);
+        gate.countDown();
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(crashedListener.sent.poll(5, TimeUnit.SECONDS));
+        }
+
+        FakeClient client = new FakeClient(null);
+        RecordingListener listener = new RecordingListener();
+        Outbox outbox = new Outbox(client, this.directory, listener);
+
+        // nothing that was sent before the crash is sent again
+        assertEquals(0, outbox.pending());
+        assertEquals(1, listener.uncertain.size());
+        assertEquals(Long.valueOf(stuck), listener.uncertain.get(0));
+        assertTrue(client.sent.isEmpty());
+
+        release.countDown();
+        crashed.close();
+        outbox.close();
+    }
+
+    private static Message message(String body) {
+        Message message = new Message();
+        message.body = body;
+        message.originator = "orig";
+        message.originatorType = Message.OriginatorType.ALPHA;
+        message.numbers = new String[]{"447777777777"};
+        return message;
+    }
+
+    private static int count(Path directory) throws IOException {
+        int count = 0;
+        for (Path path : Files.newDirectoryStream(directory)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static class FakeClient extends Client {
+        final List<Message> sent = new CopyOnWriteArrayList<Message>();
+        final CountDownLatch attempted = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        FakeClient(CountDownLatch release) {
+            super("api_key");
+            this.release = release;
+        }
+
+        @Override
+        public SmsResult sendSms(Message message) throws IOException {
+            this.attempted.countDown();
+            if (this.release != null) {
+                try {
+                    this.release.await();
+                } catch (InterruptedException e) {
+                }
+                throw new IOException("stopped");
+            }
+            this.sent.add(message);
+            SmsResult result = new SmsResult();
+            result.txGuid = "guid";
+            return result;
+        }
+    }
+
+    private static class GatedClient extends FakeClient {
+        private final CountDownLatch stuck;
+        private final CountDownLatch gate;
+
+        GatedClient(CountDownLatch stuck, CountDownLatch gate) {
+            super(null);
+            this.stuck = stuck;
+            this.gate = gate;
+        }
+
+        @Override
+        public SmsResult sendSms(Message message) throws IOException {
+            try {
+                if (message.body.equals("stuck")) {
+                    this.stuck.await();
+                    throw new IOException("stopped");
+                }
+                this.gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return super.sendSms(message);
+        }
+    }
+
+    private static class RecordingListener implements Outbox.OutcomeListener {
+        final BlockingQueue<Long> sent = new LinkedBlockingQueue<Long>();
+        final List<Long> uncertain = new CopyOnWriteArrayList<Long>();
+
+        public void onSent(long id, Message message, SmsResult result) {
+            this.sent.add(id);
+        }
+
+        public void onFailed(long id, Message message, Exception exception) {
+        }
+
+        public void onUncertain(long id, Message message) {
+            this.uncertain.add(id);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class PriceBookTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private Client client;
+
+    @Before
+    public void setup() {
+        client = new Client(apiKey, HttpClients.createDefault(), host, host);
+
+        stubFor(get(urlEqualTo("/v3/prices"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"prices_in_pence\":{\"NL\":0.04,\"LR\":0.028}}}")));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void estimateCostTest() throws Exception {
+        PriceBook priceBook = new PriceBook(client);
+        try {
+            Message message = new Message();
+            message.numbers = new String[]{"31612345678", "31612345679"};
+            message.body = "message body";
+            message.originator = "orig";
+
+            assertEquals(new BigDecimal("0.04"), priceBook.priceInPence("NL"));
+            assertNull(priceBook.priceInPence("GB"));
+            assertEquals(new BigDecimal("0.08"), priceBook.estimateCost(message, "NL"));
+            assertNull(priceBook.estimateCost(message, "GB"));
+
+            message.body = new String(new char[161]).replace('\0', 'a');
+            assertEquals(new BigDecimal("0.16"), priceBook.estimateCost(message, "NL"));
+
+            verify(1, getRequestedFor(urlEqualTo("/v3/prices")));
+        } finally {
+            priceBook.close();
+        }
+    }
+
+    @Test
+    public void backgroundRefreshTest() throws Exception {
+        PriceBook priceBook = new PriceBook(client, 50);
+        try {
+            Map<String, BigDecimal> initial = priceBook.pricesInPence();
+            long loaded = priceBook.lastUpdated();
+
+            stubFor(get(urlEqualTo("/v3/prices"))
+                .withHeader("X-API-KEY", equalTo(apiKey))
+                .willReturn(aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"success\":{\"prices_in_pence\":{\"NL\":0.05,\"GB\":0.03}}}")));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!new BigDecimal("0.05").equals(priceBook.priceInPence("NL")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(new BigDecimal("0.05"), priceBook.priceInPence("NL"));
+            assertEquals(new BigDecimal("0.03"), priceBook.priceInPence("GB"));
+            assertNull(priceBook.priceInPence("LR"));
+            // the old snapshot is replaced, not changed under its readers
+            assertEquals(new BigDecimal("0.04"), initial.get("NL"));
+            assertTrue(priceBook.lastUpdated() >= loaded);
+            assertNull(priceBook.lastRefreshError());
+        } finally {
+            priceBook.close();
+        }
+    }
+
+    @Test
+    public void failedRefreshTest() throws Exception {
+        PriceBook priceBook = new PriceBook(client, 50);
+        try {
+            stubFor(get(urlEqualTo("/v3/prices"))
+                .withHeader("X-API-KEY", equalTo(apiKey))
+                .willReturn(aResponse()
+                    .withStatus(500)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"failure\":{\"failcode\":\"SYSTEM_FAILURE\"}}")));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (priceBook.lastRefreshError() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            ZenSendException error = (ZenSendException) priceBook.lastRefreshError();
+            assertEquals(500, error.httpCode);
+            assertEquals("SYSTEM_FAILURE", error.failCode);
+
+            // later failures keep the previous table too
+            long updated = priceBook.lastUpdated();
+            Thread.sleep(200);
+            assertEquals(new BigDecimal("0.04"), priceBook.priceInPence("NL"));
+            assertEquals(new BigDecimal("0.028"), priceBook.priceInPence("LR"));
+            assertEquals(updated, priceBook.lastUpdated());
+            assertNotNull(priceBook.lastRefreshError());
+        } finally {
+            priceBook.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.zensend;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PriorityDispatcherTest {
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+
+    private Client client;
+
+    @Before
+    public void setup() {
+        client = new Client("API-KEY-123", new InMemoryTransport()
+            .handle(Endpoint.SEND_SMS, new InMemoryTransport.Handler() {
+                public Transport.Response handle(Transport.Request request) throws IOException {
+                    String body = new String(request.body(), StandardCharsets.US_ASCII);
+                    String text = body.substring("BODY=".length(), body.indexOf('&'));
+                    if (text.startsWith("block")) {
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    sent.add(text);
+                    return InMemoryTransport.response(200, ("{\"success\":{\"txguid\":\"guid\",\"numbers\":1,"
+                        + "\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":5.4,\"new_balance_in_pence\":10.0}}")
+                        .getBytes(StandardCharsets.UTF_8));
+                }
+            }));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        blocked.countDown();
+        client.close();
+    }
+
+    @Test
+    public void reservedCapacityTest() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(client, 2, 1);
+        try {
+            List<CompletableFuture<SmsResult>> bulk = new ArrayList<CompletableFuture<SmsResult>>();
+            for (int i = 0; i < 5; i++) {
+                bulk.add(dispatcher.send(message("block" + i), PriorityDispatcher.Priority.BULK, "campaign"));
+            }
+
+            // bulk can't take the reserved connection
+            assertEquals("guid", dispatcher.send(message("otp"), PriorityDispatcher.Priority.TRANSACTIONAL)
+                .get(5, TimeUnit.SECONDS).txGuid);
+            assertEquals(1, dispatcher.inFlight(PriorityDispatcher.Priority.BULK));
+            assertEquals(4, dispatcher.queueDepth(PriorityDispatcher.Priority.BULK));
+            assertEquals(Arrays.asList("otp"), sent);
+
+            blocked.countDown();
+            for (CompletableFuture<SmsResult> result : bulk) {
+                result.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(0, dispatcher.queueDepth(PriorityDispatcher.Priority.BULK));
+            assertEquals(1, dispatcher.waitTime(PriorityDispatcher.Priority.TRANSACTIONAL).getTotalCount());
+            assertEquals(5, dispatcher.waitTime(PriorityDispatcher.Priority.BULK).getTotalCount());
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void fairQueuingTest() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(client, 1, 0);
+        dispatcher.setWeight("small", 2);
+        try {
+            // holds the only connection while the others queue up
+            dispatcher.send(message("block"), PriorityDispatcher.Priority.BULK);
+            for (int i = 0; i < 6; i++) {
+                dispatcher.send(message("large" + i), PriorityDispatcher.Priority.BULK, "large");
+            }
+            for (int i = 0; i < 4; i++) {
+                dispatcher.send(message("small" + i), PriorityDispatcher.Priority.BULK, "small");
+            }
+            CompletableFuture<SmsResult> cancelled = dispatcher.send(message("cancelled"), PriorityDispatcher.Priority.BULK, "large");
+            assertEquals(11, dispatcher.queueDepth(PriorityDispatcher.Priority.BULK));
+            cancelled.cancel(false);
+            assertEquals(10, dispatcher.queueDepth(PriorityDispatcher.Priority.BULK));
+            CompletableFuture<SmsResult> otp = dispatcher.send(message("otp"), PriorityDispatcher.Priority.TRANSACTIONAL);
+
+            blocked.countDown();
+            otp.get(5, TimeUnit.SECONDS);
+        } finally {
+            dispatcher.close();
+        }
+
+        // small has twice the weight of large, and the transactional message
+        // goes ahead of the bulk backlog
+        assertEquals(Arrays.asList("block", "otp", "small0", "large0", "small1", "small2", "large1", "small3",
+            "large2", "large3", "large4", "large5"), sent);
+    }
+
+    private static Message message(String body) {
+        Message message = new Message();
+        message.body = body;
+        message.originator = "orig";
+        message.numbers = new String[]{"447777777777"};
+        return message;
+    }
+}
@@ -0,0 +1,108 @@
+package io.zensend;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void burstTest() {
+        RateLimiter limiter = new RateLimiter(1, 3, 0);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void concurrencyTest() throws Exception {
+        RateLimiter limiter = new RateLimiter(0, 1, 2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, limiter.inFlight());
+
+        CompletableFuture<Void> waiting = limiter.acquireAsync();
+        assertFalse(waiting.isDone());
+
+        limiter.release();
+        waiting.get(1, TimeUnit.SECONDS);
+        assertEquals(2, limiter.inFlight());
+
+        limiter.release();
+        limiter.release();
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    public void slotTimeoutKeepsRatePermitTest() throws Exception {
+        // one rate permit left after the first request, but no free slot
+        RateLimiter limiter = new RateLimiter(0.1, 2, 1);
+        assertTrue(limiter.tryAcquire());
+
+        assertFalse(limiter.acquire(50, TimeUnit.MILLISECONDS));
+
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void cancelDelayedAcquireTest() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1, 1);
+        assertTrue(limiter.tryAcquire());
+
+        // cancelled while waiting for a concurrency slot
+        CompletableFuture<Void> waiting = limiter.acquireAsync();
+        Thread.sleep(100);
+        assertTrue(waiting.cancel(false));
+
+        // cancelled before the rate permit came up
+        CompletableFuture<Void> delayed = limiter.acquireAsync();
+        assertTrue(delayed.cancel(false));
+        Thread.sleep(100);
+
+        limiter.release();
+        assertEquals(0, limiter.inFlight());
+        assertTrue(limiter.acquire(1, TimeUnit.SECONDS));
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    public void throttleTest() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 1, 0);
+        assertEquals(100, limiter.permitsPerSecond(), 0.01);
+
+        // adjustments are limited to one a second
+        limiter.onThrottled();
+        assertEquals(100, limiter.permitsPerSecond(), 0.01);
+
+        Thread.sleep(1100);
+        limiter.onThrottled();
+        assertEquals(50, limiter.permitsPerSecond(), 0.01);
+        limiter.onSuccess();
+        assertEquals(50, limiter.permitsPerSecond(), 0.01);
+
+        // recovers by 10% a second
+        Thread.sleep(1100);
+        limiter.onSuccess();
+        assertEquals(55, limiter.permitsPerSecond(), 0.01);
+    }
+
+    @Test
+    public void unlimitedTest() {
+        RateLimiter limiter = new RateLimiter(0, 1, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertEquals(0, limiter.permitsPerSecond(), 0);
+    }
+}
@@ -0,0 +1,61 @@
+package io.zensend;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SmsCalculatorTest {
+
+    @Test
+    public void encodingTest() {
+        assertEquals(Message.SmsEncoding.GSM, SmsCalculator.encodingFor("message body£ {€}"));
+        assertEquals(Message.SmsEncoding.UCS2, SmsCalculator.encodingFor("message body ✓"));
+        assertEquals(Message.SmsEncoding.UCS2, SmsCalculator.encodingFor("ç"));
+        assertEquals(0, SmsCalculator.septets('`'));
+        assertEquals(2, SmsCalculator.septets('€'));
+        assertEquals(1, SmsCalculator.septets('Ω'));
+    }
+
+    @Test
+    public void gsmPartsTest() {
+        assertEquals(1, SmsCalculator.countParts(repeat('a', 160)));
+        assertEquals(2, SmsCalculator.countParts(repeat('a', 161)));
+        assertEquals(2, SmsCalculator.countParts(repeat('a', 306)));
+        assertEquals(3, SmsCalculator.countParts(repeat('a', 307)));
+
+        // extension characters take two septets
+        assertEquals(1, SmsCalculator.countParts(repeat('{', 80)));
+        assertEquals(2, SmsCalculator.countParts(repeat('{', 81)));
+        // and can't straddle two parts
+        assertEquals(3, SmsCalculator.countParts(repeat('a', 152) + repeat('{', 77)));
+    }
+
+    @Test
+    public void ucs2PartsTest() {
+        assertEquals(1, SmsCalculator.countParts(repeat('✓', 70)));
+        assertEquals(2, SmsCalculator.countParts(repeat('✓', 71)));
+        assertEquals(2, SmsCalculator.countParts(repeat('✓', 134)));
+        assertEquals(3, SmsCalculator.countParts(repeat('✓', 135)));
+
+        // surrogate pairs aren't split across parts
+        String emoji = "😀";
+        assertEquals(2, SmsCalculator.countParts(repeat('✓', 65) + emoji + repeat('✓', 67)));
+        assertEquals(3, SmsCalculator.countParts(repeat('✓', 66) + emoji + repeat('✓', 66)));
+    }
+
+    @Test
+    public void prepareTest() {
+        Message message = new Message();
+        message.body = repeat('✓', 71);
+
+        assertEquals(2, SmsCalculator.prepare(message));
+        assertEquals(Message.SmsEncoding.UCS2, message.smsEncoding);
+
+        message.smsEncoding = Message.SmsEncoding.GSM;
+        assertEquals(1, SmsCalculator.prepare(message));
+    }
+
+    private static String repeat(char c, int count) {
+        return new String(new char[count]).replace('\0', c);
+    }
+}
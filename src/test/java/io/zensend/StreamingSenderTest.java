@@ -0,0 +1,83 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class StreamingSenderTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private Client client;
+
+    @Before
+    public void setup() {
+        client = new Client(apiKey, HttpClients.createDefault(), host, host);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void sendsInChunksTest() throws Exception {
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"TX\",\"numbers\":2,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":0.04,\"new_balance_in_pence\":3985.8}}")));
+
+        Message message = new Message();
+        message.body = "body";
+        message.originator = "orig";
+
+        String numbers = "447777777771\n447777777772\n\n4477,77777773\n1\n0\n+44 7777 777774\r\n447777777775\n";
+        final List<Long> chunks = Collections.synchronizedList(new ArrayList<Long>());
+        final List<String> invalid = new ArrayList<String>();
+        // the sink runs on worker threads, so failures are checked afterwards
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+
+        long sent = new StreamingSender(client, 2, 2).send(message, new ByteArrayInputStream(numbers.getBytes("US-ASCII")),
+            new StreamingSender.ResultSink() {
+                public void onSuccess(long chunk, String[] numbers, SmsResult result) {
+                    chunks.add(chunk);
+                }
+
+                public void onFailure(long chunk, String[] numbers, Exception exception) {
+                    failures.add(exception);
+                }
+
+                public void onInvalidNumber(String number) {
+                    invalid.add(number);
+                }
+            });
+
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(4, sent);
+        assertEquals(2, chunks.size());
+        assertEquals(Arrays.asList("4477,77777773", "1", "0"), invalid);
+        verify(postRequestedFor(urlPathEqualTo("/v3/sendsms"))
+            .withRequestBody(equalTo("BODY=body&NUMBERS=447777777771%2C447777777772&ORIGINATOR=orig")));
+        verify(postRequestedFor(urlPathEqualTo("/v3/sendsms"))
+            .withRequestBody(equalTo("BODY=body&NUMBERS=447777777774%2C447777777775&ORIGINATOR=orig")));
+    }
+}
@@ -0,0 +1,145 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class TenantPoolTest {
+
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private TenantPool pool;
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<String, RateLimiter>();
+
+    @Before
+    public void setup() {
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        pool = new TenantPool(config, new TenantPool.RateLimiterFactory() {
+            public RateLimiter create(String apiKey, Endpoint endpoint) {
+                if (endpoint != Endpoint.SEND_SMS) {
+                    return null;
+                }
+                RateLimiter rateLimiter = new RateLimiter(0.01, 10, 0);
+                rateLimiters.put(apiKey, rateLimiter);
+                return rateLimiter;
+            }
+        });
+    }
+
+    @After
+    public void teardown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void tenantsTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance")).withHeader("X-API-KEY", equalTo("KEY-1"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"balance\":100.0}}")));
+        stubFor(get(urlEqualTo("/v3/checkbalance")).withHeader("X-API-KEY", equalTo("KEY-2"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"balance\":25.5}}")));
+
+        Client first = pool.tenant("KEY-1");
+        Client second = pool.tenant("KEY-2");
+        assertSame(first, pool.tenant("KEY-1"));
+        assertEquals(2, pool.size());
+
+        assertEquals(new BigDecimal("100.0"), first.checkBalance());
+        assertEquals(new BigDecimal("25.5"), second.checkBalance());
+
+        Map<String, BigDecimal> balances = pool.balancesInPence();
+        assertEquals(new BigDecimal("100.0"), balances.get("KEY-1"));
+        assertEquals(new BigDecimal("25.5"), balances.get("KEY-2"));
+
+        // closing a tenant leaves the shared transport open
+        first.close();
+        assertEquals(new BigDecimal("25.5"), second.checkBalance());
+
+        pool.remove("KEY-1");
+        assertEquals(1, pool.size());
+        assertNotSame(first, pool.tenant("KEY-1"));
+    }
+
+    @Test
+    public void retryBudgetTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance"))
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"failure\":{\"failcode\":\"UNAVAILABLE\"}}")));
+
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.retryPolicy = new RetryPolicy();
+        config.retryPolicy.maxAttempts = 2;
+        config.retryPolicy.initialBackoffInMilliseconds = 1;
+        config.retryPolicy.retryBudget = 1;
+        config.retryPolicy.retryBudgetRatio = 0;
+
+        TenantPool retrying = new TenantPool(config);
+        try {
+            for (String apiKey : new String[]{"KEY-1", "KEY-2"}) {
+                try {
+                    retrying.tenant(apiKey).checkBalance();
+                    fail();
+                } catch (ZenSendException e) {
+                    assertEquals(503, e.httpCode);
+                }
+            }
+        } finally {
+            retrying.close();
+        }
+
+        // one tenant using up its retries doesn't use up the other's
+        verify(2, getRequestedFor(urlEqualTo("/v3/checkbalance")).withHeader("X-API-KEY", equalTo("KEY-1")));
+        verify(2, getRequestedFor(urlEqualTo("/v3/checkbalance")).withHeader("X-API-KEY", equalTo("KEY-2")));
+    }
+
+    @Test
+    public void rateLimitersTest() throws Exception {
+        stubFor(post(urlEqualTo("/v3/sendsms"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"7CDEB38F-4370-18FD-D7CE-329F21B99209\",\"numbers\":1,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":5.4,\"new_balance_in_pence\":10.0}}")));
+
+        Message message = new Message();
+        message.body = "body";
+        message.originator = "orig";
+        message.numbers = new String[]{"447777777777"};
+
+        // each tenant has a burst of its own
+        for (int i = 0; i < 10; i++) {
+            pool.tenant("KEY-1").sendSms(message);
+            pool.tenant("KEY-2").sendSms(message);
+        }
+
+        assertEquals(2, rateLimiters.size());
+        assertFalse(rateLimiters.get("KEY-1").tryAcquire());
+        assertFalse(rateLimiters.get("KEY-2").tryAcquire());
+
+        verify(10, postRequestedFor(urlEqualTo("/v3/sendsms")).withHeader("X-API-KEY", equalTo("KEY-1")));
+        verify(10, postRequestedFor(urlEqualTo("/v3/sendsms")).withHeader("X-API-KEY", equalTo("KEY-2")));
+    }
+}
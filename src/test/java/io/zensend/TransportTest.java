@@ -0,0 +1,254 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class TransportTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    @Test
+    public void inMemoryTransportTest() throws Exception {
+        InMemoryTransport transport = new InMemoryTransport()
+            .respond(Endpoint.CHECK_BALANCE, 200, "{\"success\":{\"balance\":4000.84}}")
+            .respond(Endpoint.PRICES, 403, "{\"failure\":{\"failcode\":\"NOT_AUTHORIZED\"}}")
+            .handle(Endpoint.SEND_SMS, new InMemoryTransport.Handler() {
+                public Transport.Response handle(Transport.Request request) throws IOException {
+                    assertEquals(apiKey, request.headers.get("X-API-KEY"));
+                    assertEquals("BODY=hello&NUMBERS=447777777777%2C448888888888&ORIGINATOR=orig",
+                        new String(request.body(), StandardCharsets.US_ASCII));
+                    return InMemoryTransport.response(200, ("{\"success\":{\"txguid\":\"guid\",\"numbers\":2,"
+                        + "\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":12.34,\"new_balance_in_pence\":10.0}}")
+                        .getBytes(StandardCharsets.UTF_8));
+                }
+            });
+
+        Client client = new Client(apiKey, transport);
+        try {
+            assertEquals(new BigDecimal("4000.84"), client.checkBalance());
+
+            Message message = new Message();
+            message.body = "hello";
+            message.originator = "orig";
+            message.numbers = new String[]{"447777777777", "448888888888"};
+            assertEquals("guid", client.sendSms(message).txGuid);
+            assertEquals(new BigDecimal("10.0"), client.balanceTracker().balanceInPence());
+
+            try {
+                client.getPrices();
+                fail();
+            } catch (ZenSendException ex) {
+                assertEquals(403, ex.httpCode);
+                assertEquals("NOT_AUTHORIZED", ex.failCode);
+            }
+
+            try {
+                client.lookupOperator("447777777777");
+                fail();
+            } catch (ZenSendException ex) {
+                assertEquals(404, ex.httpCode);
+            }
+        } finally {
+            client.close();
+        }
+        assertEquals(4, transport.requestCount());
+    }
+
+    @Test
+    public void okHttpTransportTest() throws Exception {
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .withRequestBody(equalTo("BODY=message+body%C2%A3&NUMBERS=44787878787%2C449999999999&ORIGINATOR=orig"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"guid\",\"numbers\":2,\"smsparts\":1,\"encoding\":\"gsm\","
+                    + "\"cost_in_pence\":12.34,\"new_balance_in_pence\":10.0}}")));
+        stubFor(get(urlEqualTo("/v3/operator_lookup?NUMBER=441234567890"))
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "text/html")
+                .withBody("<body>unavailable</body>")));
+
+        // wiremock only speaks HTTP/1.1 so this also covers the fallback
+        Client client = new Client(apiKey, new OkHttpTransport(), host, host);
+        try {
+            Message message = new Message();
+            message.body = "message body£";
+            message.originator = "orig";
+            message.numbers = new String[]{"44787878787", "449999999999"};
+            assertEquals("guid", client.sendSms(message).txGuid);
+
+            try {
+                client.lookupOperator("441234567890");
+                fail();
+            } catch (ZenSendException ex) {
+                assertEquals(503, ex.httpCode);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void okHttpNoResendTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"balance\":4000.84}}")));
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+        Message message = new Message();
+        message.body = "hello";
+        message.originator = "orig";
+        message.numbers = new String[]{"447777777777"};
+
+        // OkHttp retries requests that fail on a pooled connection by default
+        Client client = new Client(apiKey, new OkHttpTransport(), host, host);
+        try {
+            client.checkBalance();
+            client.sendSms(message);
+            fail();
+        } catch (IOException e) {
+        } finally {
+            client.close();
+        }
+
+        verify(1, postRequestedFor(urlPathEqualTo("/v3/sendsms")));
+    }
+
+    @Test
+    public void http2ConfigTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"balance\":4000.84}}")));
+
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.http2 = true;
+        config.http2MaxConcurrentStreams = 2;
+
+        final Client client = new Client(apiKey, config);
+        try {
+            // plain http and no h2 from wiremock, so HTTP/1.1 is used
+            Transport transport = config.createTransport();
+            try {
+                assertEquals("http/1.1", transport.warmUp(host));
+            } finally {
+                transport.close();
+            }
+            client.warmUp();
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<BigDecimal>> balances = new ArrayList<Future<BigDecimal>>();
+            for (int i = 0; i < 32; i++) {
+                balances.add(executor.submit(new Callable<BigDecimal>() {
+                    public BigDecimal call() throws Exception {
+                        return client.checkBalance();
+                    }
+                }));
+            }
+            for (Future<BigDecimal> balance : balances) {
+                assertEquals(new BigDecimal("4000.84"), balance.get());
+            }
+            executor.shutdown();
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void warmUpTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"balance\":4000.84}}")));
+
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.warmUpConnections = 3;
+
+        PoolingHttpClientConnectionManager connectionManager = config.createConnectionManager();
+        Client client = new Client(apiKey, new ApacheTransport(config.createHttpClient(connectionManager), connectionManager, config),
+            host, host);
+        try {
+            client.warmUp();
+            assertEquals(3, connectionManager.getTotalStats().getAvailable());
+
+            // requests reuse the warm connections
+            assertEquals(new BigDecimal("4000.84"), client.checkBalance());
+            assertEquals(3, connectionManager.getTotalStats().getAvailable());
+
+            // warming up again doesn't open more
+            client.warmUp();
+            assertEquals(3, connectionManager.getTotalStats().getAvailable());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void warmUpUnsupportedTest() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.asyncTransport = true;
+
+        Client client = new Client(apiKey, config);
+        try {
+            client.warmUp();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("warmUp needs a connection pool"));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void adaptiveKeepAliveTest() {
+        AdaptiveKeepAliveStrategy strategy = new AdaptiveKeepAliveStrategy(5000, 30000);
+
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        assertEquals(5000, strategy.getKeepAliveDuration(response, null));
+
+        response.setHeader("Keep-Alive", "timeout=10, max=1000");
+        assertEquals(9500, strategy.getKeepAliveDuration(response, null));
+
+        response.setHeader("Keep-Alive", "timeout=300");
+        assertEquals(30000, strategy.getKeepAliveDuration(response, null));
+
+        response.setHeader("Keep-Alive", "timeout=0");
+        assertEquals(1, strategy.getKeepAliveDuration(response, null));
+    }
+}
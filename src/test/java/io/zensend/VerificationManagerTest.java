@@ -0,0 +1,239 @@
+package io.zensend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+
+public class VerificationManagerTest {
+
+    private static final String apiKey = "API-KEY-123";
+    private static final String host = "http://localhost:8089";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private AsyncClient client;
+    private VerificationManager manager;
+
+    @Before
+    public void setup() {
+        client = new AsyncClient(apiKey, HttpAsyncClients.createDefault(), host, host);
+        manager = new VerificationManager(client, 2, 10, 50, 2000);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        manager.close();
+        client.close();
+    }
+
+    @Test
+    public void verifyTest() throws Exception {
+        stubFor(post(urlEqualTo("/api/msisdn_verify"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"session\":\"SESS\"}}")));
+
+        stubFor(get(urlEqualTo("/api/msisdn_verify?SESSION=SESS")).inScenario("verify")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{}}"))
+            .willSetStateTo("unavailable"));
+
+        stubFor(get(urlEqualTo("/api/msisdn_verify?SESSION=SESS")).inScenario("verify")
+            .whenScenarioStateIs("unavailable")
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"failure\":{\"failcode\":\"UNAVAILABLE\"}}"))
+            .willSetStateTo("verified"));
+
+        stubFor(get(urlEqualTo("/api/msisdn_verify?SESSION=SESS")).inScenario("verify")
+            .whenScenarioStateIs("verified")
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"msisdn\":\"441234567890\"}}")));
+
+        CompletableFuture<String> msisdn = manager.verify("441234567890");
+        assertEquals("441234567890", msisdn.get(5, TimeUnit.SECONDS));
+        assertEquals(0, manager.openSessions());
+
+        verify(3, getRequestedFor(urlEqualTo("/api/msisdn_verify?SESSION=SESS")));
+    }
+
+    @Test
+    public void manySessionsTest() throws Exception {
+        stubFor(get(urlPathEqualTo("/api/msisdn_verify"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"msisdn\":\"441234567890\"}}")));
+
+        List<CompletableFuture<String>> sessions = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 20; i++) {
+            sessions.add(manager.track("SESS" + i));
+        }
+        CompletableFuture.allOf(sessions.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        for (CompletableFuture<String> session : sessions) {
+            assertEquals("441234567890", session.get());
+        }
+        assertEquals(0, manager.openSessions());
+    }
+
+    @Test
+    public void rejectedSessionTest() throws Exception {
+        stubFor(get(urlEqualTo("/api/msisdn_verify?SESSION=SESS"))
+            .willReturn(aResponse()
+                .withStatus(400)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"failure\":{\"failcode\":\"INVALID_SESSION\"}}")));
+
+        try {
+            manager.track("SESS").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("INVALID_SESSION", ((ZenSendException) e.getCause()).failCode);
+        }
+    }
+
+    @Test
+    public void synchronousFailureTest() throws Exception {
+        StubClient stub = new StubClient();
+        VerificationManager single = new VerificationManager(stub, 1, 10, 20, 2000);
+        try {
+            try {
+                single.track("BAD").get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("status failed", e.getCause().getMessage());
+            }
+
+            // the failed poll gave its slot back
+            CompletableFuture<String> msisdn = single.track("SESS");
+            stub.polls.poll(5, TimeUnit.SECONDS).complete("441234567890");
+            assertEquals("441234567890", msisdn.get(5, TimeUnit.SECONDS));
+            assertEquals(0, single.openSessions());
+        } finally {
+            single.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void closeWhilePollingTest() throws Exception {
+        StubClient stub = new StubClient();
+        VerificationManager closing = new VerificationManager(stub, 1, 10, 20, 2000);
+        try {
+            CompletableFuture<String> msisdn = closing.track("SESS");
+            StatusFuture status = stub.polls.poll(5, TimeUnit.SECONDS);
+            assertTrue(status.watched.await(5, TimeUnit.SECONDS));
+
+            closing.close();
+            assertTrue(msisdn.isCancelled());
+
+            // a poll finishing after close is dropped rather than rescheduled
+            status.complete("441234567890");
+            assertEquals(Collections.emptyList(), status.thrown);
+            assertNull(stub.polls.poll(100, TimeUnit.MILLISECONDS));
+
+            try {
+                closing.track("LATE");
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("VerificationManager is closed", e.getMessage());
+            }
+        } finally {
+            closing.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void expiredSessionTest() throws Exception {
+        stubFor(get(urlEqualTo("/api/msisdn_verify?SESSION=SESS"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{}}")));
+
+        VerificationManager shortLived = new VerificationManager(client, 2, 10, 20, 200);
+        try {
+            CompletableFuture<String> msisdn = shortLived.track("SESS");
+            assertEquals(1, shortLived.openSessions());
+            msisdn.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertEquals(0, shortLived.openSessions());
+        } finally {
+            shortLived.close();
+        }
+    }
+
+    // answers status polls with futures the test completes, and fails
+    // synchronously for the BAD session
+    private static class StubClient extends AsyncClient {
+        final BlockingQueue<StatusFuture> polls = new LinkedBlockingQueue<StatusFuture>();
+
+        StubClient() {
+            super(apiKey, HttpAsyncClients.createDefault(), host, host);
+        }
+
+        @Override
+        public CompletableFuture<String> msisdnVerificationStatus(String session) {
+            if (session.equals("BAD")) {
+                throw new IllegalStateException("status failed");
+            }
+            StatusFuture status = new StatusFuture();
+            this.polls.add(status);
+            return status;
+        }
+    }
+
+    // records exceptions thrown by completion callbacks, which would
+    // otherwise be lost in the dependent future
+    private static class StatusFuture extends CompletableFuture<String> {
+        final List<Throwable> thrown = new CopyOnWriteArrayList<Throwable>();
+        final CountDownLatch watched = new CountDownLatch(1);
+
+        @Override
+        public CompletableFuture<String> whenComplete(final BiConsumer<? super String, ? super Throwable> action) {
+            CompletableFuture<String> dependent = super.whenComplete((value, ex) -> {
+                try {
+                    action.accept(value, ex);
+                } catch (RuntimeException e) {
+                    this.thrown.add(e);
+                    throw e;
+                }
+            });
+            this.watched.countDown();
+            return dependent;
+        }
+    }
+}
@@ -4,7 +4,9 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.apache.http.impl.client.HttpClients;
 import org.junit.After;
@@ -13,6 +15,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 
 public class ZenSendTest {
 
@@ -46,6 +49,178 @@ public class ZenSendTest {
 
 
     
+    @Test
+    public void clientConfigTest() throws Exception {
+        setupMockServer("/v3/checkbalance", 200, "{\"success\":{\"balance\":4000.84}}");
+
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.apiMaxConnections = 2;
+        config.connectTimeoutInMilliseconds = 1000;
+
+        Client configuredClient = new Client(apiKey, config);
+        try {
+            assertEquals(new BigDecimal("4000.84"), configuredClient.checkBalance());
+            assertEquals(new BigDecimal("4000.84"), configuredClient.checkBalance());
+        } finally {
+            configuredClient.close();
+        }
+    }
+
+    @Test
+    public void asyncTransportTest() throws Exception {
+        setupMockServer("/v3/checkbalance", 200, "{\"success\":{\"balance\":4000.84}}");
+        setupMockServer("/v3/prices", 403, "{\"failure\":{\"failcode\":\"NOT_AUTHORIZED\"}}");
+
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.asyncTransport = true;
+
+        Client asyncTransportClient = new Client(apiKey, config);
+        try {
+            assertEquals(new BigDecimal("4000.84"), asyncTransportClient.checkBalance());
+            try {
+                asyncTransportClient.getPrices();
+                fail();
+            } catch (ZenSendException ex) {
+                assertEquals(403, ex.httpCode);
+                assertEquals("NOT_AUTHORIZED", ex.failCode);
+            }
+        } finally {
+            asyncTransportClient.close();
+        }
+    }
+
+    @Test
+    public void retryIdempotentRequestTest() throws Exception {
+        stubFor(get(urlEqualTo("/v3/checkbalance")).inScenario("retry")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willSetStateTo("recovered")
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "text/html")
+                .withBody("<body>unavailable</body>")));
+        stubFor(get(urlEqualTo("/v3/checkbalance")).inScenario("retry")
+            .whenScenarioStateIs("recovered")
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"balance\":4000.84}}")));
+
+        Client retryingClient = new Client(apiKey, retryConfig());
+        try {
+            assertEquals(new BigDecimal("4000.84"), retryingClient.checkBalance());
+        } finally {
+            retryingClient.close();
+        }
+
+        verify(2, getRequestedFor(urlEqualTo("/v3/checkbalance")));
+    }
+
+    @Test
+    public void noRetryForSendSmsTest() throws Exception {
+        Message message = new Message();
+        message.numbers = new String[]{"44787878787"};
+        message.body = "message body";
+        message.originator = "orig";
+
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "text/html")
+                .withBody("<body>unavailable</body>")));
+
+        Client retryingClient = new Client(apiKey, retryConfig());
+        try {
+            retryingClient.sendSms(message);
+            fail();
+        } catch (ZenSendException ex) {
+            assertEquals(503, ex.httpCode);
+        } finally {
+            retryingClient.close();
+        }
+
+        verify(1, postRequestedFor(urlPathEqualTo("/v3/sendsms")));
+    }
+
+    @Test
+    public void retryableFailCodeTest() throws Exception {
+        Message message = new Message();
+        message.numbers = new String[]{"44787878787"};
+        message.body = "message body";
+        message.originator = "orig";
+
+        stubFor(post(urlPathEqualTo("/v3/sendsms")).inScenario("retry")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willSetStateTo("recovered")
+            .willReturn(aResponse()
+                .withStatus(503)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"failure\":{\"failcode\":\"UNAVAILABLE\"}}")));
+        stubFor(post(urlPathEqualTo("/v3/sendsms")).inScenario("retry")
+            .whenScenarioStateIs("recovered")
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"7CDEB38F-4370-18FD-D7CE-329F21B99209\",\"numbers\":1,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":5.4,\"new_balance_in_pence\":10.0}}")));
+        setupMockServer("/v3/checkbalance", 500, "{\"failure\":{\"failcode\":\"SYSTEM_FAILURE\"}}");
+
+        ClientConfig config = retryConfig();
+        config.retryPolicy.retryableFailCodes.add("UNAVAILABLE");
+        config.retryPolicy.nonRetryableFailCodes.add("SYSTEM_FAILURE");
+
+        Client retryingClient = new Client(apiKey, config);
+        try {
+            // the failcode says the send wasn't acted on, so it's safe to retry
+            assertEquals("7CDEB38F-4370-18FD-D7CE-329F21B99209", retryingClient.sendSms(message).txGuid);
+            try {
+                retryingClient.checkBalance();
+                fail();
+            } catch (ZenSendException ex) {
+                assertEquals("SYSTEM_FAILURE", ex.failCode);
+            }
+        } finally {
+            retryingClient.close();
+        }
+
+        verify(2, postRequestedFor(urlPathEqualTo("/v3/sendsms")));
+        verify(1, getRequestedFor(urlEqualTo("/v3/checkbalance")));
+    }
+
+    @Test
+    public void clientMetricsTest() throws Exception {
+        setupMockServer("/v3/checkbalance", 200, "{\"success\":{\"balance\":4000.84}}");
+        setupMockServer("/v3/prices", 403, "{\"failure\":{\"failcode\":\"NOT_AUTHORIZED\"}}");
+
+        ClientMetrics metrics = new ClientMetrics();
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.listeners.add(metrics);
+
+        Client instrumentedClient = new Client(apiKey, config);
+        try {
+            instrumentedClient.checkBalance();
+            instrumentedClient.checkBalance();
+            try {
+                instrumentedClient.getPrices();
+                fail();
+            } catch (ZenSendException ex) {
+                assertEquals("NOT_AUTHORIZED", ex.failCode);
+            }
+        } finally {
+            instrumentedClient.close();
+        }
+
+        assertEquals(2, metrics.successCount(Endpoint.CHECK_BALANCE));
+        assertEquals(2, metrics.latency(Endpoint.CHECK_BALANCE).getTotalCount());
+        assertEquals(Long.valueOf(1), metrics.failureCounts(Endpoint.PRICES).get("NOT_AUTHORIZED"));
+        assertEquals(3, metrics.poolWait().getTotalCount());
+        assertEquals(0, metrics.errorCount(Endpoint.CHECK_BALANCE));
+    }
+
     @Test
     public void checkBalanceFailureTest() throws Exception {
         setupMockServer("/v3/checkbalance", 403, "{\"failure\":{\"failcode\":\"NOT_AUTHORIZED\"}}");
@@ -82,6 +257,24 @@ public class ZenSendTest {
         assertEquals(new BigDecimal("15.0"), result.costInPence);
     }
 
+    @Test
+    public void operatorLookupUtf8ResponseTest() throws Exception {
+        String number = "447777777777";
+
+        stubFor(get(urlPathEqualTo("/v3/operator_lookup"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .withQueryParam("NUMBER", equalTo(number))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"mcc\":\"234\",\"mnc\":\"34\",\"operator\":\"t\u00e9l\u00e9phone-\u20ac\"}}")));
+
+
+        OperatorLookupResult result = client.lookupOperator(number);
+
+        assertEquals("t\u00e9l\u00e9phone-\u20ac", result.operator);
+    }
+
     @Test
     public void operatorLookupSystemFailureTest() throws Exception {
         String number = "557777777777";
@@ -190,6 +383,84 @@ public class ZenSendTest {
             .withRequestBody(equalTo("BODY=message+body&NUMBERS=44787878787%2C449999999999&ORIGINATOR=orig&ORIGINATOR_TYPE=alpha&TIMETOLIVE=100&ENCODING=gsm")));
     }
 
+    @Test
+    public void balanceTrackerTest() throws Exception {
+        Message message = new Message();
+        message.numbers = new String[]{"44787878787"};
+        message.body = "message body";
+        message.originator = "orig";
+
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"eb224587-840e-456c-9e36-7e8af1fe0d56\",\"numbers\":1,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":0.04,\"new_balance_in_pence\":99.5}}")));
+
+        final BigDecimal[] notified = new BigDecimal[1];
+        BalanceTracker tracker = client.balanceTracker();
+        assertNull(tracker.balanceInPence());
+        tracker.addLowBalanceListener(new BigDecimal("100"), new BalanceTracker.LowBalanceListener() {
+            public void onLowBalance(BigDecimal balanceInPence, BigDecimal thresholdInPence) {
+                notified[0] = balanceInPence;
+            }
+        });
+
+        client.sendSms(message);
+
+        assertEquals(new BigDecimal("99.5"), tracker.balanceInPence());
+        assertEquals(new BigDecimal("99.5"), notified[0]);
+        assertEquals(new BigDecimal("99.5"), tracker.currentBalanceInPence());
+        verify(0, getRequestedFor(urlEqualTo("/v3/checkbalance")));
+    }
+
+    @Test
+    public void throwingLowBalanceListenerTest() throws Exception {
+        Message message = new Message();
+        message.numbers = new String[]{"44787878787"};
+        message.body = "message body";
+        message.originator = "orig";
+
+        stubFor(post(urlPathEqualTo("/v3/sendsms"))
+            .withHeader("X-API-KEY", equalTo(apiKey))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"success\":{\"txguid\":\"eb224587-840e-456c-9e36-7e8af1fe0d56\",\"numbers\":1,\"smsparts\":1,\"encoding\":\"gsm\",\"cost_in_pence\":0.04,\"new_balance_in_pence\":99.5}}")));
+
+        final List<Throwable> uncaught = new ArrayList<Throwable>();
+        final BigDecimal[] notified = new BigDecimal[1];
+        BalanceTracker tracker = client.balanceTracker();
+        tracker.addLowBalanceListener(new BigDecimal("100"), new BalanceTracker.LowBalanceListener() {
+            public void onLowBalance(BigDecimal balanceInPence, BigDecimal thresholdInPence) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        tracker.addLowBalanceListener(new BigDecimal("100"), new BalanceTracker.LowBalanceListener() {
+            public void onLowBalance(BigDecimal balanceInPence, BigDecimal thresholdInPence) {
+                notified[0] = balanceInPence;
+            }
+        });
+
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread t, Throwable e) {
+                uncaught.add(e);
+            }
+        });
+        try {
+            // the message was sent and charged, so the result still comes back
+            assertEquals("eb224587-840e-456c-9e36-7e8af1fe0d56", client.sendSms(message).txGuid);
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+
+        assertEquals(new BigDecimal("99.5"), notified[0]);
+        assertEquals(1, uncaught.size());
+        assertEquals("listener failed", uncaught.get(0).getMessage());
+    }
+
     @Test
     public void sendSmsFailureTest() throws Exception {
         Message message = new Message();
@@ -299,6 +570,15 @@ public class ZenSendTest {
     }
 
 
+    private static ClientConfig retryConfig() {
+        ClientConfig config = new ClientConfig();
+        config.url = host;
+        config.verifyUrl = host;
+        config.retryPolicy = new RetryPolicy();
+        config.retryPolicy.initialBackoffInMilliseconds = 1;
+        return config;
+    }
+
     private void setupMockServer(String url, int status, String body) {
         stubFor(get(urlEqualTo(url))
             .withHeader("X-API-KEY", equalTo(apiKey))